@@ -0,0 +1,136 @@
+package stackingcups.benchmarks;
+
+import static stackingcups.benchmarks.TowerHandles.*;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the readers of a ConcurrentTower while a writer keeps
+ * publishing, for each store.
+ *
+ * <p>Each group runs READERS threads of one reader against a single
+ * writer thread on the same tower, so JMH reports the reader and the
+ * writer apart. The writer pushes a cup larger than any other and pops
+ * it again: the push publishes in place, the pop copies the stack, so
+ * the readers see both kinds of publication. The tower holds the cups
+ * size..1 nested, then the lid 1, as in TowerBenchmark.</p>
+ *
+ * <p>Run with {@code java -jar benchmarks/target/benchmarks.jar ConcurrentTower},
+ * and use {@code -tg} to try other numbers of reader threads.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ConcurrentTowerBenchmark {
+    private static final int READERS = 3;   // reader threads of each group
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    @Param({"array", "tree"})
+    private String store;
+
+    private Object tower;   // the ConcurrentTower shared by the threads of a group
+
+    /**
+     * Build the tower: the cups size..1 nested, then the lid 1.
+     */
+    @Setup(Level.Trial)
+    public void build() throws Throwable {
+        tower = concurrent(store, 10, 8 * size + 16);
+        for (int id = size; id >= 1; id--) {
+            C_PUSH_CUP.invokeExact(tower, id);
+        }
+        C_PUSH_LID.invokeExact(tower, 1);
+    }
+
+    /**
+     * Height of the last published state.
+     */
+    @Benchmark
+    @Group("height")
+    @GroupThreads(READERS)
+    public int height() throws Throwable {
+        return (int) C_HEIGHT.invokeExact(tower);
+    }
+
+    /**
+     * Writer of the height group.
+     */
+    @Benchmark
+    @Group("height")
+    @GroupThreads(1)
+    public int heightWriter() throws Throwable {
+        return write();
+    }
+
+    /**
+     * Textual form of the last published stack.
+     */
+    @Benchmark
+    @Group("stackingStack")
+    @GroupThreads(READERS)
+    public Object stackingStack() throws Throwable {
+        return (Object) C_STACKING_STACK.invokeExact(tower);
+    }
+
+    /**
+     * Writer of the stackingStack group.
+     */
+    @Benchmark
+    @Group("stackingStack")
+    @GroupThreads(1)
+    public int stackingStackWriter() throws Throwable {
+        return write();
+    }
+
+    /**
+     * Ids of the lided cups of the last published stack.
+     */
+    @Benchmark
+    @Group("lidedCups")
+    @GroupThreads(READERS)
+    public Object lidedCups() throws Throwable {
+        return (Object) C_LIDED_CUPS.invokeExact(tower);
+    }
+
+    /**
+     * Writer of the lidedCups group.
+     */
+    @Benchmark
+    @Group("lidedCups")
+    @GroupThreads(1)
+    public int lidedCupsWriter() throws Throwable {
+        return write();
+    }
+
+    /**
+     * Push a cup larger than any other on the top, then pop it.
+     * @return the height published by the pop
+     */
+    private int write() throws Throwable {
+        C_PUSH_CUP.invokeExact(tower, size + 1);
+        C_POP_CUP.invokeExact(tower);
+        return (int) C_HEIGHT.invokeExact(tower);
+    }
+}
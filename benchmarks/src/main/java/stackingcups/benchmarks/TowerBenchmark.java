@@ -0,0 +1,181 @@
+package stackingcups.benchmarks;
+
+import static stackingcups.benchmarks.TowerHandles.*;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the hot paths of a headless Tower, for each store and
+ * for towers from 10 to a million items.
+ *
+ * <p>The tower holds the cups size..1, each one nested in the one below,
+ * and the lid 1 on top, so every push fits and the height grows with the
+ * size instead of its square. A benchmark that changes the tower undoes
+ * its change in the same call: the tower keeps its size across calls and
+ * the undo journal does not grow. orderTower and reverseTower work on a
+ * fresh fork of the tower for each call, since a reverse drops the cups
+ * that no longer fit.</p>
+ *
+ * <p>Run with {@code java -jar benchmarks/target/benchmarks.jar}, and add
+ * {@code -prof gc} to report the bytes allocated per call.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TowerBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    private int size;
+
+    @Param({"array", "tree"})
+    private String store;
+
+    private Object tower;   // the fixture, always back to the same stack
+    private final StringBuilder text = new StringBuilder();   // reused by writeStack
+
+    /**
+     * Build the tower: the cups size..1 nested, then the lid 1.
+     */
+    @Setup(Level.Trial)
+    public void build() throws Throwable {
+        tower = headless(store, 10, 8 * size + 16);
+        for (int id = size; id >= 1; id--) {
+            PUSH_CUP.invokeExact(tower, id);
+        }
+        PUSH_LID.invokeExact(tower, 1);
+        if (!(boolean) OK.invokeExact(tower)) {
+            throw new IllegalStateException("The tower of " + size + " cups does not fit");
+        }
+    }
+
+    /**
+     * Push a cup larger than any other on the top, then undo it.
+     */
+    @Benchmark
+    public int pushCup() throws Throwable {
+        PUSH_CUP.invokeExact(tower, size + 1);
+        UNDO.invokeExact(tower);
+        return (int) HEIGHT.invokeExact(tower);
+    }
+
+    /**
+     * Push a lid on the top, then undo it.
+     */
+    @Benchmark
+    public int pushLid() throws Throwable {
+        PUSH_LID.invokeExact(tower, 2);
+        UNDO.invokeExact(tower);
+        return (int) HEIGHT.invokeExact(tower);
+    }
+
+    /**
+     * Pop the top cup, the one under the lid, then undo it.
+     */
+    @Benchmark
+    public int popCup() throws Throwable {
+        POP_CUP.invokeExact(tower);
+        UNDO.invokeExact(tower);
+        return (int) HEIGHT.invokeExact(tower);
+    }
+
+    /**
+     * Pop the lid on the top, then undo it.
+     */
+    @Benchmark
+    public int popLid() throws Throwable {
+        POP_LID.invokeExact(tower);
+        UNDO.invokeExact(tower);
+        return (int) HEIGHT.invokeExact(tower);
+    }
+
+    /**
+     * Remove the cup in the middle of the stack, then undo it.
+     * Every item above it moves.
+     */
+    @Benchmark
+    public int removeCup() throws Throwable {
+        REMOVE_CUP.invokeExact(tower, (size + 1) / 2);
+        UNDO.invokeExact(tower);
+        return (int) HEIGHT.invokeExact(tower);
+    }
+
+    /**
+     * Order a fork of the tower.
+     */
+    @Benchmark
+    public int orderTower(Branch branch) throws Throwable {
+        ORDER_TOWER.invokeExact(branch.tower);
+        return (int) HEIGHT.invokeExact(branch.tower);
+    }
+
+    /**
+     * Reverse a fork of the tower.
+     */
+    @Benchmark
+    public int reverseTower(Branch branch) throws Throwable {
+        REVERSE_TOWER.invokeExact(branch.tower);
+        return (int) HEIGHT.invokeExact(branch.tower);
+    }
+
+    /**
+     * Ids of the cups with their lid on them.
+     */
+    @Benchmark
+    public Object lidedCups() throws Throwable {
+        return (Object) LIDED_CUPS.invokeExact(tower);
+    }
+
+    /**
+     * Textual form of the whole stack.
+     */
+    @Benchmark
+    public Object stackingStack() throws Throwable {
+        return (Object) STACKING_STACK.invokeExact(tower);
+    }
+
+    /**
+     * Textual form of the whole stack streamed into a reused builder,
+     * to compare with stackingStack under {@code -prof gc}.
+     */
+    @Benchmark
+    public Object writeStack() throws Throwable {
+        text.setLength(0);
+        WRITE_STACK.invokeExact(tower, (Object) text);
+        return text;
+    }
+
+    /**
+     * A fresh fork of the fixture for each call, kept apart so that only
+     * the reorderings pay for forking.
+     */
+    @State(Scope.Thread)
+    public static class Branch {
+        private Object tower;
+
+        /**
+         * Fork the fixture for the next call.
+         * @param fixture the benchmark state holding the tower
+         */
+        @Setup(Level.Invocation)
+        public void fork(TowerBenchmark fixture) throws Throwable {
+            tower = (Object) FORK.invokeExact(fixture.tower);
+        }
+    }
+}
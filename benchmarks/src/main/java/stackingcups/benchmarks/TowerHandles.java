@@ -0,0 +1,144 @@
+package stackingcups.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Method handles to the public API of Tower, ConcurrentTower and TowerSolver.
+ * The tower classes live in the default package of the BlueJ project,
+ * which a named package cannot import, and JMH only accepts benchmarks
+ * in a named package. The handles are static final, so the JIT treats
+ * them as constants and inlines the calls behind them; towers and stores
+ * are passed around as Object.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+final class TowerHandles {
+    static final MethodHandle NEW_ARRAY_STORE;   // ()Object
+    static final MethodHandle NEW_TREE_STORE;    // ()Object
+    static final MethodHandle HEADLESS;          // (int, int, Object)Object
+    static final MethodHandle PUSH_CUP;          // (Object, int)void
+    static final MethodHandle PUSH_LID;          // (Object, int)void
+    static final MethodHandle POP_CUP;           // (Object)void
+    static final MethodHandle POP_LID;           // (Object)void
+    static final MethodHandle REMOVE_CUP;        // (Object, int)void
+    static final MethodHandle ORDER_TOWER;       // (Object)void
+    static final MethodHandle REVERSE_TOWER;     // (Object)void
+    static final MethodHandle UNDO;              // (Object)void
+    static final MethodHandle FORK;              // (Object)Object
+    static final MethodHandle LIDED_CUPS;        // (Object)Object
+    static final MethodHandle STACKING_STACK;    // (Object)Object
+    static final MethodHandle WRITE_STACK;       // (Object, Object)void, to an Appendable
+    static final MethodHandle HEIGHT;            // (Object)int
+    static final MethodHandle OK;                // (Object)boolean
+    static final MethodHandle NEW_CONCURRENT;    // (int, int, Object)Object
+    static final MethodHandle C_PUSH_CUP;        // (Object, int)void
+    static final MethodHandle C_PUSH_LID;        // (Object, int)void
+    static final MethodHandle C_POP_CUP;         // (Object)void
+    static final MethodHandle C_LIDED_CUPS;      // (Object)Object
+    static final MethodHandle C_STACKING_STACK;  // (Object)Object
+    static final MethodHandle C_HEIGHT;          // (Object)int
+    static final MethodHandle SOLVE;             // (int, long)Object
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> tower = Class.forName("Tower");
+            Class<?> store = Class.forName("ItemStore");
+            NEW_ARRAY_STORE = constructor(lookup, Class.forName("ArrayItemStore"));
+            NEW_TREE_STORE = constructor(lookup, Class.forName("TreeItemStore"));
+            HEADLESS = erase(lookup.findStatic(tower, "headless",
+                    MethodType.methodType(tower, int.class, int.class, store)));
+            PUSH_CUP = method(lookup, tower, "pushCup", void.class, int.class);
+            PUSH_LID = method(lookup, tower, "pushLid", void.class, int.class);
+            POP_CUP = method(lookup, tower, "popCup", void.class);
+            POP_LID = method(lookup, tower, "popLid", void.class);
+            REMOVE_CUP = method(lookup, tower, "removeCup", void.class, int.class);
+            ORDER_TOWER = method(lookup, tower, "orderTower", void.class);
+            REVERSE_TOWER = method(lookup, tower, "reverseTower", void.class);
+            UNDO = method(lookup, tower, "undo", void.class);
+            FORK = method(lookup, tower, "fork", tower);
+            LIDED_CUPS = method(lookup, tower, "lidedCups", int[].class);
+            STACKING_STACK = method(lookup, tower, "stackingStack", String[].class);
+            WRITE_STACK = method(lookup, tower, "writeStack", void.class, Appendable.class);
+            HEIGHT = method(lookup, tower, "height", int.class);
+            OK = method(lookup, tower, "ok", boolean.class);
+            Class<?> concurrent = Class.forName("ConcurrentTower");
+            NEW_CONCURRENT = erase(lookup.findConstructor(concurrent,
+                    MethodType.methodType(void.class, int.class, int.class, store)));
+            C_PUSH_CUP = method(lookup, concurrent, "pushCup", void.class, int.class);
+            C_PUSH_LID = method(lookup, concurrent, "pushLid", void.class, int.class);
+            C_POP_CUP = method(lookup, concurrent, "popCup", void.class);
+            C_LIDED_CUPS = method(lookup, concurrent, "lidedCups", int[].class);
+            C_STACKING_STACK = method(lookup, concurrent, "stackingStack", String[].class);
+            C_HEIGHT = method(lookup, concurrent, "height", int.class);
+            SOLVE = erase(lookup.findStatic(Class.forName("TowerSolver"), "solve",
+                    MethodType.methodType(int[].class, int.class, long.class)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private TowerHandles() {
+    }
+
+    /**
+     * Create a headless tower with the given store.
+     * @param store "array" or "tree"
+     * @param width the width of the tower
+     * @param maxHeight the maximum height of the tower
+     * @return the tower
+     * @throws Throwable if the tower cannot be created
+     */
+    static Object headless(String store, int width, int maxHeight) throws Throwable {
+        Object items = store.equals("tree") ? (Object) NEW_TREE_STORE.invokeExact()
+                                            : (Object) NEW_ARRAY_STORE.invokeExact();
+        return (Object) HEADLESS.invokeExact(width, maxHeight, items);
+    }
+
+    /**
+     * Create a thread-safe tower with the given store.
+     * @param store "array" or "tree"
+     * @param width the width of the tower
+     * @param maxHeight the maximum height of the tower
+     * @return the ConcurrentTower
+     * @throws Throwable if the tower cannot be created
+     */
+    static Object concurrent(String store, int width, int maxHeight) throws Throwable {
+        Object items = store.equals("tree") ? (Object) NEW_TREE_STORE.invokeExact()
+                                            : (Object) NEW_ARRAY_STORE.invokeExact();
+        return (Object) NEW_CONCURRENT.invokeExact(width, maxHeight, items);
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Handle to a public no-argument constructor, returning Object.
+     */
+    private static MethodHandle constructor(MethodHandles.Lookup lookup, Class<?> type)
+            throws ReflectiveOperationException {
+        return erase(lookup.findConstructor(type, MethodType.methodType(void.class)));
+    }
+
+    /**
+     * Handle to a public method of a tower class, with the tower and any
+     * object result seen as Object.
+     */
+    private static MethodHandle method(MethodHandles.Lookup lookup, Class<?> type, String name,
+                                       Class<?> result, Class<?>... parameters)
+            throws ReflectiveOperationException {
+        return erase(lookup.findVirtual(type, name, MethodType.methodType(result, parameters)));
+    }
+
+    /**
+     * Replace every reference type of a handle by Object.
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        return handle.asType(handle.type().erase());
+    }
+}
@@ -0,0 +1,59 @@
+package stackingcups.benchmarks;
+
+import static stackingcups.benchmarks.TowerHandles.*;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of TowerSolver.solve for n cups, with a height of the
+ * general case and the two heights that need cup 1 nested in cup 2.
+ *
+ * <p>Run with {@code java -jar benchmarks/target/benchmarks.jar TowerSolver}.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TowerSolverBenchmark {
+    @Param({"1000", "200000"})
+    private int n;
+
+    /**
+     * A height in the middle of the range.
+     */
+    @Benchmark
+    public Object solveMiddle() throws Throwable {
+        return (Object) SOLVE.invokeExact(n, (long) n * n / 2 + 1);
+    }
+
+    /**
+     * The height 2n + 1, one of the two the odd sums miss.
+     */
+    @Benchmark
+    public Object solveLow() throws Throwable {
+        return (Object) SOLVE.invokeExact(n, 2L * n + 1);
+    }
+
+    /**
+     * The height n*n - 2, the other one.
+     */
+    @Benchmark
+    public Object solveHigh() throws Throwable {
+        return (Object) SOLVE.invokeExact(n, (long) n * n - 2);
+    }
+}
@@ -0,0 +1,135 @@
+import javax.swing.Timer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Animator is a singleton that runs animations at a fixed frame rate on the
+ * Swing event dispatch thread, using a Swing Timer. Callers only queue the
+ * frames and return at once, so model code never sleeps while a shape moves.
+ *
+ * <p>Every shape (owner) has its own queue: its animations run one after the
+ * other, while the animations of different shapes run at the same time.
+ * All the steps of one frame go into a single coalesced Canvas redraw.
+ * The timer only runs while some animation is pending.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class Animator {
+    public static final int FRAMES_PER_SECOND = 60;
+    public static final int FRAME_MILLIS = 1000 / FRAMES_PER_SECOND;
+
+    private static Animator animatorSingleton;
+
+    private Timer timer;
+    private LinkedHashMap<Object, ArrayDeque<Animation>> queues;
+
+    /**
+     * Factory method to get the animator singleton object.
+     * @return the animator
+     */
+    public static synchronized Animator getAnimator() {
+        if (animatorSingleton == null) {
+            animatorSingleton = new Animator();
+        }
+        return animatorSingleton;
+    }
+
+    /**
+     * Create the animator with a stopped timer.
+     */
+    private Animator() {
+        queues = new LinkedHashMap<Object, ArrayDeque<Animation>>();
+        timer = new Timer(FRAME_MILLIS, e -> tick());
+        timer.setCoalesce(true);   // a late frame is skipped, not queued twice
+    }
+
+    /**
+     * Queue an animation for a shape. It starts when the previous
+     * animations of the same shape have finished.
+     * @param owner the shape that is animated
+     * @param frames how many frames the animation lasts (at least 1)
+     * @param step called on the event dispatch thread with the frame number,
+     *             from 1 to frames
+     */
+    public synchronized void animate(Object owner, int frames, IntConsumer step) {
+        if (frames <= 0) {
+            throw new IllegalArgumentException("Una animación necesita al menos un cuadro");
+        }
+        ArrayDeque<Animation> queue = queues.get(owner);
+        if (queue == null) {
+            queue = new ArrayDeque<Animation>();
+            queues.put(owner, queue);
+        }
+        queue.addLast(new Animation(frames, step));
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Check if a shape has animations that did not finish.
+     * @param owner the shape
+     * @return true if some frame of the shape is still pending
+     */
+    public synchronized boolean isAnimating(Object owner) {
+        return queues.containsKey(owner);
+    }
+
+    /**
+     * Drop every pending animation of a shape.
+     * @param owner the shape
+     */
+    public synchronized void cancel(Object owner) {
+        queues.remove(owner);
+    }
+
+    /**
+     * Run one frame: advance the current animation of every shape.
+     * The steps run outside the lock so they can queue new animations.
+     */
+    private void tick() {
+        ArrayList<Runnable> steps = new ArrayList<Runnable>();
+        synchronized (this) {
+            for (Iterator<ArrayDeque<Animation>> i = queues.values().iterator(); i.hasNext(); ) {
+                ArrayDeque<Animation> queue = i.next();
+                Animation current = queue.peekFirst();
+                int frame = ++current.frame;
+                steps.add(() -> current.step.accept(frame));
+                if (frame == current.frames) {
+                    queue.removeFirst();
+                    if (queue.isEmpty()) {
+                        i.remove();
+                    }
+                }
+            }
+            if (queues.isEmpty()) {
+                timer.stop();
+            }
+        }
+        for (Runnable step : steps) {
+            step.run();
+        }
+    }
+
+    /**
+     * An animation in a queue, with the number of frames already shown.
+     */
+    private static class Animation {
+        private final int frames;
+        private final IntConsumer step;
+        private int frame;
+
+        /**
+         * @param frames how many frames the animation lasts
+         * @param step what to do in each frame
+         */
+        Animation(int frames, IntConsumer step) {
+            this.frames = frames;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import static java.lang.Math.*;
+
+/**
+ * Default storage engine of the Tower, backed by an ArrayList.
+ * Pushing onto the top costs O(1). Removing or inserting an item shifts
+ * the list, renumbers the stack indexes above it and marks their positions
+ * as dirty. Stack indexes are always up to date, so finding an item never
+ * needs its position. Positions are recomputed only when one is needed,
+ * so a run of removals and inserts, in any order, costs a single position
+ * pass. A push or a pop reads the top item, so it recomputes them first.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class ArrayItemStore implements ItemStore {
+    private ArrayList<Item> stack;
+    private IdIndex<Cup> cupIndex;   // Cups of the stack by id
+    private IdIndex<Lid> lidIndex;   // Lids of the stack by id
+    private LidedCups lided;         // Cups with their lid right above
+    private int[] maxTops;           // maxTops[k] = highest top among items 0..k
+    private int dirtyFrom;           // first index whose position is stale (CLEAN if none)
+
+    private static final int CLEAN = Integer.MAX_VALUE;
+
+    /**
+     * Create an empty store.
+     */
+    public ArrayItemStore() {
+        this.stack = new ArrayList<Item>();
+        this.cupIndex = new IdIndex<Cup>();
+        this.lidIndex = new IdIndex<Lid>();
+        this.lided = new LidedCups();
+        this.maxTops = new int[16];
+        this.dirtyFrom = CLEAN;
+    }
+
+    @Override
+    public int size() {
+        return stack.size();
+    }
+
+    @Override
+    public Item get(int index) {
+        if (index >= dirtyFrom) {
+            clean();
+        }
+        return stack.get(index);
+    }
+
+    /**
+     * Place an item on the top of the stack in O(1).
+     * Only the new item gets a position, and the running maximum top
+     * is extended by one entry.
+     * @param item the item to add
+     */
+    @Override
+    public void add(Item item) {
+        clean();
+        int idx = stack.size();
+        Item below = (idx == 0) ? null : stack.get(idx - 1);
+        item.setBasePosition(Tower.basePositionOver(below, item.getId()));
+        item.setStackIndex(idx);
+        stack.add(item);
+        index(item);
+        lided.link(below, item);
+
+        if (idx == maxTops.length) {
+            maxTops = Arrays.copyOf(maxTops, idx * 2);
+        }
+        int maxTopBelow = (idx == 0) ? 0 : maxTops[idx - 1];
+        maxTops[idx] = max(maxTopBelow, item.getTopPosition());
+    }
+
+    /**
+     * Shift the items from index up and mark them as dirty.
+     * @param index the stack index the item gets
+     * @param item the item to insert
+     */
+    @Override
+    public void insert(int index, Item item) {
+        if (index == stack.size()) {
+            add(item);
+            return;
+        }
+        Item below = (index == 0) ? null : stack.get(index - 1);
+        Item above = stack.get(index);
+        lided.unlink(below, above);
+        lided.link(below, item);
+        lided.link(item, above);
+        stack.add(index, item);
+        index(item);
+        renumber(index);
+        dirtyFrom = min(dirtyFrom, index);
+    }
+
+    @Override
+    public void remove(Item item) {
+        int idx = item.getStackIndex();
+        Item below = (idx == 0) ? null : stack.get(idx - 1);
+        Item above = (idx == stack.size() - 1) ? null : stack.get(idx + 1);
+        lided.unlink(below, item);
+        lided.unlink(item, above);
+        lided.link(below, above);
+        stack.remove(idx);
+        renumber(idx);
+        if (item instanceof Cup) {
+            cupIndex.remove(item.getId());
+        } else {
+            lidIndex.remove(item.getId());
+        }
+        dirtyFrom = min(dirtyFrom, idx);   // We need to reconfigure the items above
+    }
+
+    @Override
+    public int indexOf(Item item) {
+        return item.getStackIndex();   // never stale, only positions are
+    }
+
+    @Override
+    public Cup findCup(int id) {
+        return cupIndex.get(id);
+    }
+
+    @Override
+    public Lid findLid(int id) {
+        return lidIndex.get(id);
+    }
+
+    @Override
+    public int height() {
+        clean();
+        return stack.isEmpty() ? 0 : maxTops[stack.size() - 1];
+    }
+
+    /**
+     * Binary search on the running maximum top.
+     * @param height a height in cm
+     * @return the stack index of the first item above height, or size()
+     */
+    @Override
+    public int firstReaching(int height) {
+        clean();
+        int lo = 0;
+        int hi = stack.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxTops[mid] > height) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Binary search on the base positions.
+     * @param height a height in cm
+     * @return the stack index of the first item starting at height or above, or size()
+     */
+    @Override
+    public int firstStartingAt(int height) {
+        clean();
+        int lo = 0;
+        int hi = stack.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (stack.get(mid).getBasePosition() >= height) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public void load(ArrayList<Item> items) {
+        stack = new ArrayList<Item>(items);
+        cupIndex.clear();
+        lidIndex.clear();
+        for (Item item : stack) {
+            index(item);
+        }
+        lided.rebuild(stack);
+        dirtyFrom = CLEAN;
+        recalculatedStackPositions(0);
+    }
+
+    /**
+     * Order the lided cups by their stack indexes, which are always up to
+     * date, so no position is recomputed. The order is cached until the
+     * set of lided cups changes, so a repeated query costs O(k).
+     * @return the ids from base to top
+     */
+    @Override
+    public int[] lidedCups() {
+        if (lided.size() == 0) {
+            return new int[0];
+        }
+        return lided.inStackOrder(id -> cupIndex.get(id).getStackIndex());
+    }
+
+    /**
+     * Copy the stack into a new store in O(n). Positions are kept in the
+     * items, so each item is copied as well.
+     * @return the new store
+     */
+    @Override
+    public ItemStore fork() {
+        ArrayList<Item> copies = new ArrayList<Item>(stack.size());
+        for (Item item : stack) {
+            if (item instanceof Cup) {
+                copies.add(new Cup(item.getId(), item.getColor()));
+            } else {
+                copies.add(new Lid(item.getId(), item.getColor()));
+            }
+        }
+        ArrayItemStore copy = new ArrayItemStore();
+        copy.load(copies);
+        return copy;
+    }
+
+    /**
+     * Get the live list of items with their positions up to date.
+     * @return the list of items from base to top
+     */
+    @Override
+    public ArrayList<Item> asList() {
+        clean();
+        return stack;
+    }
+
+    /**
+     * Walk the list once, after the dirty suffix is recomputed.
+     * @param visitor receives the kind, id, base and top of each item
+     */
+    @Override
+    public void forEach(ItemVisitor visitor) {
+        clean();
+        for (int idx = 0; idx < stack.size(); idx++) {
+            Item item = stack.get(idx);
+            visitor.visit((item instanceof Cup) ? ItemVisitor.CUP : ItemVisitor.LID,
+                          item.getId(), item.getBasePosition(), item.getTopPosition());
+        }
+    }
+
+    /**
+     * Recompute the dirty suffix, if there is one.
+     */
+    private void clean() {
+        if (dirtyFrom != CLEAN) {
+            int fromIndex = dirtyFrom;
+            dirtyFrom = CLEAN;
+            recalculatedStackPositions(fromIndex);
+        }
+    }
+
+    /**
+     * Give the items from an index up their stack index, leaving their
+     * positions dirty. Costs as much as the shift of the list that moved them.
+     * @param fromIndex the first stack index that moved
+     */
+    private void renumber(int fromIndex) {
+        for (int idx = fromIndex; idx < stack.size(); idx++) {
+            stack.get(idx).setStackIndex(idx);
+        }
+    }
+
+    /**
+     * Add an item to the id index of its kind.
+     * @param item the item to index
+     */
+    private void index(Item item) {
+        if (item instanceof Cup) {
+            cupIndex.put(item.getId(), (Cup) item);
+        } else {
+            lidIndex.put(item.getId(), (Lid) item);
+        }
+    }
+
+    /**
+     * Recalculate the stack positions to have a correct Y position about each item.
+     *
+     * Items below fromIndex did not change, so only the suffix that starts there
+     * is recomputed (base position, stack index and running maximum top).
+     *
+     * @param fromIndex the first stack index whose position may have changed
+     */
+    private void recalculatedStackPositions(int fromIndex) {
+        long start = TowerMetrics.start();
+        TowerEvents.PositionRecompute event = new TowerEvents.PositionRecompute();
+        event.begin();
+        int size = stack.size();
+        if (maxTops.length < size) {
+            maxTops = new int[max(16, Integer.highestOneBit(size) * 2)];
+            fromIndex = 0;   // The running maximum was lost with the old array
+        }
+
+        Item below = (fromIndex == 0) ? null : stack.get(fromIndex - 1);
+        int maxTopFound = (fromIndex == 0) ? 0 : maxTops[fromIndex - 1];
+
+        for (int idx = fromIndex; idx < size; idx++) {
+            Item item = stack.get(idx);
+
+            item.setBasePosition(Tower.basePositionOver(below, item.getId()));
+            item.setStackIndex(idx);
+
+            maxTopFound = max(item.getTopPosition(), maxTopFound);
+            maxTops[idx] = maxTopFound;
+            below = item;
+        }
+        TowerMetrics.stop(TowerMetrics.Operation.RECALCULATE_POSITIONS, start);
+        if (event.shouldCommit()) {
+            event.fromIndex = fromIndex;
+            event.itemsRecomputed = size - fromIndex;
+            event.stackSize = size;
+            event.height = maxTopFound;
+            event.commit();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 import java.util.*;
 
 /**
@@ -21,6 +20,7 @@ public class Canvas{
 
     private static Canvas canvasSingleton;
     private static final Random rand = new Random();
+    private static final int TOAST_MILLIS = 3000;   // how long a toast stays on screen
 
     /** 
      * Automatic Color palette. 
@@ -46,6 +46,16 @@ public class Canvas{
         
     }
 
+    /**
+     * Get the canvas singleton only if it is already on screen, without
+     * creating it and without bringing it to the front.
+     * @return the canvas, or null if it does not exist or is hidden
+     */
+    public static Canvas getVisibleCanvas(){
+        Canvas current = canvasSingleton;
+        return (current != null && current.frame.isVisible()) ? current : null;
+    }
+
     //  ----- instance part -----
 
     private JFrame frame;
@@ -53,8 +63,10 @@ public class Canvas{
     private Graphics2D graphic;
     private Color backgroundColour;
     private Image canvasImage;
-    private List <Object> objects;
-    private HashMap <Object,ShapeDescription> shapes;
+    private LinkedHashMap <Object,ShapeDescription> shapes;   // in z-order, the last is on top
+    private java.awt.Rectangle dirty;     // union of the changed areas, null if none
+    private boolean redrawScheduled;      // a redraw is already queued on the EDT
+    private Image backgroundLayer;        // static picture under the shapes, may be null
     
     /**
      * Create a Canvas.
@@ -71,8 +83,7 @@ public class Canvas{
         canvas.setPreferredSize(new Dimension(width, height));
         backgroundColour = bgColour;
         frame.pack();
-        objects = new ArrayList <Object>();
-        shapes = new HashMap <Object,ShapeDescription>();
+        shapes = new LinkedHashMap <Object,ShapeDescription>();
     }
 
     /**
@@ -82,7 +93,7 @@ public class Canvas{
      * @param visible  boolean value representing the desired visibility of
      * the canvas (true or false) 
      */
-    public void setVisible(boolean visible){
+    public synchronized void setVisible(boolean visible){
         if(graphic == null) {
             // first time: instantiate the offscreen image and fill it with
             // the background colour
@@ -92,12 +103,17 @@ public class Canvas{
             graphic.setColor(backgroundColour);
             graphic.fillRect(0, 0, size.width, size.height);
             graphic.setColor(Color.black);
+            if(dirty != null) {
+                scheduleRedraw();   // shapes drawn before the image existed
+            }
         }
         frame.setVisible(visible);
     }
 
     /**
      * Draw a given shape onto the canvas.
+     * The shape is brought to the front in O(1): it is unlinked from its
+     * old place in the z-order, if any, and linked again at the end.
      * @param  referenceObject  an object to define identity for this shape
      * @param  color            the color of the shape
      * @param  shape            the shape object to be drawn on the canvas
@@ -105,21 +121,48 @@ public class Canvas{
      // Note: this is a slightly backwards way of maintaining the shape
      // objects. It is carefully designed to keep the visible shape interfaces
      // in this project clean and simple for educational purposes.
-    public void draw(Object referenceObject, Color color, Shape shape){
-        objects.remove(referenceObject);   // just in case it was already there
-        objects.add(referenceObject);      // add at the end
-        shapes.put(referenceObject, new ShapeDescription(shape, color));
-        redraw();
+    public synchronized void draw(Object referenceObject, Color color, Shape shape){
+        register(referenceObject, color, shape);
+        scheduleRedraw();
+    }
+
+    /**
+     * Draw many shapes onto the canvas at once, in order, so the last one
+     * ends on top. It is the same as calling draw for each of them, but
+     * the canvas is locked once and a single redraw is queued.
+     * @param  referenceObjects  the objects that define identity for each shape
+     * @param  colors            the color of each shape
+     * @param  shapeObjects      the shape objects to be drawn on the canvas
+     */
+    public synchronized void drawAll(Object[] referenceObjects, Color[] colors, Shape[] shapeObjects){
+        for(int i = 0; i < referenceObjects.length; i++) {
+            register(referenceObjects[i], colors[i], shapeObjects[i]);
+        }
+        scheduleRedraw();
     }
  
     /**
      * Erase a given shape's from the screen.
      * @param  referenceObject  the shape object to be erased 
      */
-    public void erase(Object referenceObject){
-        objects.remove(referenceObject);   // just in case it was already there
-        shapes.remove(referenceObject);
-        redraw();
+    public synchronized void erase(Object referenceObject){
+        if(unregister(referenceObject)) {
+            scheduleRedraw();
+        }
+    }
+
+    /**
+     * Erase many shapes from the screen at once, with a single redraw.
+     * @param  referenceObjects  the shape objects to be erased
+     */
+    public synchronized void eraseAll(Collection<?> referenceObjects){
+        boolean erased = false;
+        for(Object referenceObject : referenceObjects) {
+            erased |= unregister(referenceObject);
+        }
+        if(erased) {
+            scheduleRedraw();
+        }
     }
 
     /**
@@ -164,25 +207,151 @@ public class Canvas{
     }
 
     /**
-     * Redraw ell shapes currently on the Canvas.
+     * Show a message for a few seconds in a small window at the bottom of
+     * the canvas, without stealing the focus nor waiting for the user.
+     * May be called from any thread.
+     * @param  message  the text to show
+     */
+    public void showToast(String message){
+        SwingUtilities.invokeLater(() -> {
+            JWindow toast = new JWindow(frame);
+            JLabel label = new JLabel(message);
+            label.setOpaque(true);
+            label.setBackground(new Color(60, 60, 60));
+            label.setForeground(Color.white);
+            label.setBorder(BorderFactory.createEmptyBorder(6, 12, 6, 12));
+            toast.setFocusableWindowState(false);
+            toast.add(label);
+            toast.pack();
+            Point corner = canvas.isShowing() ? canvas.getLocationOnScreen() : new Point(0, 0);
+            toast.setLocation(corner.x + (canvas.getWidth() - toast.getWidth()) / 2,
+                              corner.y + canvas.getHeight() - toast.getHeight() - 10);
+            toast.setVisible(true);
+            javax.swing.Timer timer = new javax.swing.Timer(TOAST_MILLIS, e -> toast.dispose());
+            timer.setRepeats(false);
+            timer.start();
+        });
+    }
+
+    /**
+     * Set a static picture that is composited under every shape, such as
+     * the structure of a tower. The picture is kept as it is, so it is
+     * only painted, never rebuilt, when the shapes change.
+     * @param  layer  the picture, drawn at (0, 0), or null to remove it
+     */
+    public synchronized void setBackgroundLayer(Image layer){
+        backgroundLayer = layer;
+        Dimension size = canvas.getSize();
+        markDirty(new java.awt.Rectangle(0, 0, size.width, size.height));
+        scheduleRedraw();
+    }
+
+    /**
+     * Put a shape at the front of the z-order and mark its old and new
+     * areas as dirty. (Does not schedule a redraw.)
+     * @param  referenceObject  an object to define identity for this shape
+     * @param  color            the color of the shape
+     * @param  shape            the shape object to be drawn on the canvas
+     */
+    private void register(Object referenceObject, Color color, Shape shape){
+        ShapeDescription old = shapes.remove(referenceObject);   // just in case it was already there
+        shapes.put(referenceObject, new ShapeDescription(shape, color));   // add at the end
+        if(old != null) {
+            markDirty(old.shape);
+        }
+        markDirty(shape);
+    }
+
+    /**
+     * Take a shape out of the z-order and mark its area as dirty.
+     * (Does not schedule a redraw.)
+     * @param  referenceObject  the shape object to be erased
+     * @return true if the shape was on the canvas
+     */
+    private boolean unregister(Object referenceObject){
+        ShapeDescription old = shapes.remove(referenceObject);
+        if(old == null) {
+            return false;
+        }
+        markDirty(old.shape);
+        return true;
+    }
+
+    /**
+     * Add the area of a shape to the dirty region. The area grows by one
+     * pixel because the outline of a shape is drawn around its bounds.
+     * @param  shape  the shape that appeared, moved or disappeared
      */
-    private void redraw(){
-        erase();
-        for(Iterator i=objects.iterator(); i.hasNext(); ) {
-                       shapes.get(i.next()).draw(graphic);
+    private void markDirty(Shape shape){
+        java.awt.Rectangle bounds = shape.getBounds();
+        bounds.grow(1, 1);
+        if(dirty == null) {
+            dirty = bounds;
+        } else {
+            dirty.add(bounds);
+        }
+    }
+
+    /**
+     * Queue one redraw on the event dispatch thread. Every draw and erase
+     * made before it runs is coalesced into that single redraw.
+     */
+    private void scheduleRedraw(){
+        if(!redrawScheduled) {
+            redrawScheduled = true;
+            SwingUtilities.invokeLater(this::redraw);
+        }
+    }
+
+    /**
+     * Redraw the dirty region of the Canvas: clear it and paint, in order,
+     * only the shapes that intersect it. Then repaint only that region.
+     * Each redraw is recorded as a CanvasRedraw event in JFR recordings.
+     */
+    private synchronized void redraw(){
+        redrawScheduled = false;
+        if(dirty == null || graphic == null) {
+            return;
+        }
+        TowerEvents.CanvasRedraw event = new TowerEvents.CanvasRedraw();
+        event.begin();
+        java.awt.Rectangle region = dirty;
+        dirty = null;
+
+        graphic.setClip(region);
+        erase(region);
+        int repainted = 0;
+        for(ShapeDescription description : shapes.values()) {
+            if(description.shape.intersects(region)) {
+                description.draw(graphic);
+                repainted++;
+            }
+        }
+        graphic.setClip(null);
+        canvas.repaint(region);
+
+        if(event.shouldCommit()) {
+            event.shapesRepainted = repainted;
+            event.shapes = shapes.size();
+            event.regionWidth = region.width;
+            event.regionHeight = region.height;
+            event.commit();
         }
-        canvas.repaint();
     }
        
     /**
-     * Erase the whole canvas. (Does not repaint.)
+     * Erase a region of the canvas: fill it with the background colour and
+     * the background layer, if there is one. (Does not repaint.)
+     * @param  region  the area to erase
      */
-    private void erase(){
+    private void erase(java.awt.Rectangle region){
         Color original = graphic.getColor();
         graphic.setColor(backgroundColour);
-        Dimension size = canvas.getSize();
-        graphic.fill(new java.awt.Rectangle(0, 0, size.width, size.height));
+        graphic.fill(region);
         graphic.setColor(original);
+        if(backgroundLayer != null) {
+            graphic.drawImage(backgroundLayer, 0, 0, null);
+        }
     }
 
 
@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Thread-safe headless Tower for one writer and many readers.
+ * Mutating methods are synchronized, so writers are serialized. After each
+ * write the writer publishes an immutable View of the stack through a
+ * volatile field, and height(), stackingStack() and lidedCups() only read
+ * that View: readers never take a lock and never wait for a writer.
+ *
+ * <p>Publishing is cheap on the common path. The View keeps the kinds and
+ * ids in arrays that a push extends in place, because a reader of an older
+ * View never looks past its own size. A failed write publishes the same
+ * arrays again. Only a successful pop, removal, order or reverse copies
+ * the arrays.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class ConcurrentTower {
+    private final Tower tower;        // only touched while holding the lock
+    private volatile View view;       // last published state of the tower
+    private volatile boolean isOk;
+    private boolean[] cups;           // arrays of the published View
+    private int[] ids;
+
+    /**
+     * Create a thread-safe headless tower with the given dimensions.
+     * @param width the logical width of the tower, which scales the drawing
+     * @param maxHeight the maximum stacking height in cm
+     */
+    public ConcurrentTower(int width, int maxHeight) {
+        this(Tower.headless(width, maxHeight));
+    }
+
+    /**
+     * Create a thread-safe headless tower with the given dimensions and storage engine.
+     * @param width the logical width of the tower, which scales the drawing
+     * @param maxHeight the maximum stacking height in cm
+     * @param store an empty store, e.g. a TreeItemStore for O(log n) removal anywhere
+     */
+    public ConcurrentTower(int width, int maxHeight, ItemStore store) {
+        this(Tower.headless(width, maxHeight, store));
+    }
+
+    /**
+     * Shared constructor: publish the empty tower.
+     * @param tower the headless tower that holds the state
+     */
+    private ConcurrentTower(Tower tower) {
+        this.tower = tower;
+        this.isOk = true;
+        this.cups = new boolean[16];
+        this.ids = new int[16];
+        this.view = new View(cups, ids, 0, 0);
+    }
+
+    /**
+     * Push a new cup, like Tower.pushCup.
+     * @param i the unique id of the cup to create and push
+     */
+    public synchronized void pushCup(int i) {
+        tower.pushCup(i);
+        publishPush();
+    }
+
+    /**
+     * Push a new lid, like Tower.pushLid.
+     * @param i the unique id of the lid to create and push
+     */
+    public synchronized void pushLid(int i) {
+        tower.pushLid(i);
+        publishPush();
+    }
+
+    /**
+     * Remove the topmost cup, like Tower.popCup.
+     */
+    public synchronized void popCup() {
+        tower.popCup();
+        publishChange();
+    }
+
+    /**
+     * Remove the topmost lid, like Tower.popLid.
+     */
+    public synchronized void popLid() {
+        tower.popLid();
+        publishChange();
+    }
+
+    /**
+     * Remove a cup by id, like Tower.removeCup.
+     * @param i the id of the cup to remove
+     */
+    public synchronized void removeCup(int i) {
+        tower.removeCup(i);
+        publishChange();
+    }
+
+    /**
+     * Remove a lid by id, like Tower.removeLid.
+     * @param i the id of the lid to remove
+     */
+    public synchronized void removeLid(int i) {
+        tower.removeLid(i);
+        publishChange();
+    }
+
+    /**
+     * Order the tower, like Tower.orderTower.
+     */
+    public synchronized void orderTower() {
+        tower.orderTower();
+        publishChange();
+    }
+
+    /**
+     * Reverse the tower, like Tower.reverseTower.
+     */
+    public synchronized void reverseTower() {
+        tower.reverseTower();
+        publishChange();
+    }
+
+    /**
+     * Apply many operations as a single batch, like Tower.applyAll.
+     * Readers see the tower before or after the whole batch, never in between.
+     * @param ops the operations, applied from first to last
+     * @return the success of each operation, in the same order as ops
+     */
+    public synchronized boolean[] applyAll(List<TowerOp> ops) {
+        boolean[] results = tower.applyAll(ops);
+        publishAll();   // some operations may have failed, but others changed the stack
+        return results;
+    }
+
+    /**
+     * Get the height published by the last write. Never blocks.
+     * @return the height in cm
+     */
+    public int height() {
+        return view.height;
+    }
+
+    /**
+     * Get the number of items published by the last write. Never blocks.
+     * @return the number of cups and lids in the tower
+     */
+    public int size() {
+        return view.size;
+    }
+
+    /**
+     * Get the ids of the lided cups, like Tower.lidedCups, from the last
+     * published state. Never blocks.
+     * @return array of ids for all lided cups, from base to top
+     */
+    public int[] lidedCups() {
+        View v = view;
+        int[] found = new int[v.size / 2];
+        int count = 0;
+        for (int idx = 0; idx < v.size - 1; idx++) {
+            if (v.cups[idx] && !v.cups[idx + 1] && v.ids[idx] == v.ids[idx + 1]) {
+                found[count++] = v.ids[idx];
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Get the items from base to top, like Tower.stackingStack, from the
+     * last published state. Never blocks.
+     * @return array of strings alternating type and id from base to top
+     */
+    public String[] stackingStack() {
+        View v = view;
+        String[] result = new String[2 * v.size];
+        for (int idx = 0; idx < v.size; idx++) {
+            result[2 * idx] = v.cups[idx] ? "cup" : "lid";
+            result[2 * idx + 1] = String.valueOf(v.ids[idx]);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the last write was successful.
+     * @return true if the last write succeeded, false otherwise
+     */
+    public boolean ok() {
+        return isOk;
+    }
+
+    /**
+     * Publish the state after a push. A successful push only adds the top
+     * item, so it is written past the published size of the arrays, where
+     * no reader looks.
+     */
+    private void publishPush() {
+        int size = view.size;
+        if (tower.ok()) {
+            if (size == cups.length) {
+                cups = Arrays.copyOf(cups, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            StackView stack = tower.view();
+            cups[size] = stack.kind(size) == ItemVisitor.CUP;
+            ids[size] = stack.id(size);
+            size++;
+        }
+        publish(size);
+    }
+
+    /**
+     * Publish the state after a write that changes the stack below the top.
+     * A failed write left the stack as it was, so its arrays are kept.
+     */
+    private void publishChange() {
+        if (tower.ok()) {
+            publishAll();
+        } else {
+            publish(view.size);
+        }
+    }
+
+    /**
+     * Publish the state after any write, copying the whole stack into new arrays.
+     */
+    private void publishAll() {
+        int size = tower.view().size();
+        boolean[] newCups = new boolean[Math.max(16, size * 2)];
+        int[] newIds = new int[newCups.length];
+        int[] next = {0};
+        tower.forEach((kind, id, base, top) -> {
+            newCups[next[0]] = kind == ItemVisitor.CUP;
+            newIds[next[0]++] = id;
+        });
+        cups = newCups;
+        ids = newIds;
+        publish(size);
+    }
+
+    /**
+     * Make a new View of the current arrays visible to the readers.
+     * @param size how many items of the arrays are in the tower
+     */
+    private void publish(int size) {
+        isOk = tower.ok();
+        view = new View(cups, ids, size, tower.height());
+    }
+
+    /**
+     * Immutable state of the tower as seen by the readers. The arrays may
+     * grow past size, but the first size entries never change.
+     */
+    private static final class View {
+        private final boolean[] cups;   // cups[k] is true if item k is a cup
+        private final int[] ids;
+        private final int size;
+        private final int height;
+
+        private View(boolean[] cups, int[] ids, int size, int height) {
+            this.cups = cups;
+            this.ids = ids;
+            this.size = size;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for the ConcurrentTower class.
+ * Checks that it answers like a Tower and that readers running next to a
+ * writer only see whole states.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class ConcurrentTowerTest
+{
+    private ConcurrentTower tower;
+    private Tower reference;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a concurrent tower and a headless reference tower, both with
+     * width=10 and maxHeight=30.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        tower = new ConcurrentTower(10, 30);
+        reference = Tower.headless(10, 30);
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test every write gives the same answers as the plain tower.
+     */
+    @Test
+    public void testAnswersLikeTower()
+    {
+        tower.pushCup(4);       reference.pushCup(4);
+        tower.pushLid(4);       reference.pushLid(4);
+        tower.pushCup(2);       reference.pushCup(2);
+        tower.pushCup(2);       reference.pushCup(2);   // duplicate
+        assertEquals(reference.ok(), tower.ok());
+        tower.pushLid(1);       reference.pushLid(1);
+        tower.popCup();         reference.popCup();
+        tower.reverseTower();   reference.reverseTower();
+        tower.removeLid(9);     reference.removeLid(9); // not found
+        assertEquals(reference.ok(), tower.ok());
+        tower.pushCup(3);       reference.pushCup(3);
+        tower.orderTower();     reference.orderTower();
+
+        assertArrayEquals(reference.stackingStack(), tower.stackingStack());
+        assertArrayEquals(reference.lidedCups(), tower.lidedCups());
+        assertEquals(reference.height(), tower.height());
+        assertEquals(reference.getStack().size(), tower.size());
+    }
+
+    /**
+     * Test a push after a pop does not change what an older reader sees.
+     */
+    @Test
+    public void testPushAfterPopKeepsPublishedState()
+    {
+        tower.pushCup(1);
+        tower.pushCup(2);
+        tower.popCup();
+        String[] before = tower.stackingStack();
+        tower.pushLid(1);
+        assertArrayEquals(new String[]{"cup", "1"}, before);
+        assertArrayEquals(new String[]{"cup", "1", "lid", "1"}, tower.stackingStack());
+        assertArrayEquals(new int[]{1}, tower.lidedCups());
+    }
+
+    /**
+     * Test readers never see a torn state while one writer pushes and pops.
+     * Every published stack is a prefix of 1, 2, 3... and its height is the
+     * height of that prefix, so a reader can check each answer alone.
+     */
+    @Test
+    public void testReadersSeeWholeStates() throws InterruptedException
+    {
+        ConcurrentTower big = new ConcurrentTower(1000, 1000000);
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicBoolean torn = new AtomicBoolean(false);
+        AtomicLong reads = new AtomicLong();
+
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (!done.get()) {
+                    String[] items = big.stackingStack();
+                    int n = items.length / 2;
+                    for (int k = 0; k < n; k++) {
+                        if (!items[2 * k].equals("cup")
+                                || !items[2 * k + 1].equals(String.valueOf(k + 1))) {
+                            torn.set(true);
+                        }
+                    }
+                    int height = big.height();
+                    int root = (int) Math.round(Math.sqrt(height));
+                    if (root * root != height || root > 200) {
+                        torn.set(true);   // the height of the cups 1..n is n*n
+                    }
+                    reads.incrementAndGet();
+                }
+            });
+            readers[r].start();
+        }
+
+        for (int round = 0; round < 20; round++) {
+            for (int id = 1; id <= 200; id++) {
+                big.pushCup(id);
+            }
+            for (int id = 200; id >= 1; id--) {
+                big.popCup();
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertFalse(torn.get());
+        assertTrue(reads.get() > 0);
+        assertEquals(0, big.height());
+    }
+}
@@ -1,10 +1,12 @@
 import java.awt.Color;
+import java.util.ArrayList;
 
 /**
  * Visual representation of a Cup using Rectangle shapes from the shapes project.
  * To controller this GUI we have left wall, bottom, right wall with
  * the cup color showing only the walls and bottom, leaving the interior hollow.
- * The cup is centered horizontally within the tower.
+ * Its rectangles come from TowerLayout.itemParts, so the canvas and the
+ * offscreen images share one geometry.
  * 
  * @author Acero - Quiceno
  * @version 3.0
@@ -15,61 +17,28 @@ public class CupGUI {
     private Rectangle rightWall;
     private Rectangle bottom;
     private boolean isDrawn;
-    private int scaleFactor;
-    private int towerPixelWidth;
-    
-    private static final int CUP_WALL = TowerGUI.scaleFactor;
+    private ArrayList<java.awt.Rectangle> drawnParts;   // parts of the last draw
 
     /**
      * Create a CupGUI for the given cup.
      * @param cup the cup to represent visually
-     * @param scaleFactor pixels per logical cm unit
-     * @param towerPixelWidth total pixel width of the tower area
      */
-    public CupGUI(Cup cup, int scaleFactor, int towerPixelWidth) {
+    public CupGUI(Cup cup) {
         this.cup = cup;
         this.leftWall = new Rectangle();
         this.rightWall = new Rectangle();
         this.bottom = new Rectangle();
         this.isDrawn = false;
-        this.scaleFactor = scaleFactor;
-        this.towerPixelWidth = towerPixelWidth;
     }
 
     /**
-     * Draw the cup at the given position on the canvas.
+     * Draw the cup where a layout puts it on the canvas.
      * We draw the cup with left wall, right wall, and bottom
      * in the cup's color. The interior is left hollow (white).
-     * Centered horizontally in the tower.
-     * @param x the x coordinate of the tower left edge in pixels
-     * @param y the y coordinate of the top edge of this cup in pixels
+     * @param layout the layout of the tower on the canvas
      */
-    public void draw(int x, int y) {
-        
-        int pixelWidth = cup.getDiameter() * scaleFactor;
-        int pixelHeight = cup.getHeight() * scaleFactor;
-        int centeredX = x + (towerPixelWidth - pixelWidth) / 2;
-        Color color = cup.getColor();
-
-        // Left wall 
-        leftWall.changeSize(pixelHeight, CUP_WALL);
-        leftWall.setPosition(centeredX, y);
-        leftWall.changeColor(color);
-        leftWall.makeVisible();
-
-        // Right wall 
-        rightWall.changeSize(pixelHeight, CUP_WALL);
-        rightWall.setPosition(centeredX + pixelWidth - CUP_WALL, y);
-        rightWall.changeColor(color);
-        rightWall.makeVisible();
-
-        // Bottom 
-        bottom.changeSize(CUP_WALL, pixelWidth);
-        bottom.setPosition(centeredX, y + pixelHeight - CUP_WALL);
-        bottom.changeColor(color);
-        bottom.makeVisible();
-
-        isDrawn = true;
+    public void draw(TowerLayout layout) {
+        draw(layout.itemParts(cup));
     }
 
     /**
@@ -77,21 +46,22 @@ public class CupGUI {
      */
     public void erase() {
         if (isDrawn) {
-            leftWall.makeInvisible();
-            rightWall.makeInvisible();
-            bottom.makeInvisible();
+            Rectangle.hideAll(leftWall, rightWall, bottom);
             isDrawn = false;
         }
     }
 
     /**
      * Update the position of the cup on the canvas.
-     * @param x the new x coordinate of the tower left edge in pixels
-     * @param y the new y coordinate of the top edge in pixels
+     * Does nothing if the cup is already drawn there.
+     * @param layout the layout of the tower on the canvas
      */
-    public void updatePosition(int x, int y) {
-        erase();
-        draw(x, y);
+    public void updatePosition(TowerLayout layout) {
+        ArrayList<java.awt.Rectangle> parts = layout.itemParts(cup);
+        if (isDrawn && parts.equals(drawnParts)) {
+            return;
+        }
+        draw(parts);
     }
 
     /**
@@ -101,4 +71,21 @@ public class CupGUI {
     public Cup getCup() {
         return cup;
     }
-}
\ No newline at end of file
+
+    /**
+     * Draw the left wall, right wall and bottom of the cup.
+     * @param parts the rectangles of TowerLayout.itemParts, in that order
+     */
+    private void draw(ArrayList<java.awt.Rectangle> parts) {
+        Color color = cup.getColor();
+        Rectangle[] shapes = {leftWall, rightWall, bottom};
+        for (int k = 0; k < shapes.length; k++) {
+            java.awt.Rectangle part = parts.get(k);
+            shapes[k].reshape(part.height, part.width, part.x, part.y, color);
+        }
+        Rectangle.showAll(shapes);   // one Canvas call for the three parts
+
+        isDrawn = true;
+        drawnParts = parts;
+    }
+}
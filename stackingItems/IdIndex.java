@@ -0,0 +1,165 @@
+/**
+ * Index from positive int ids to items of one kind (cups or lids).
+ * Uses open addressing with linear probing over primitive int keys, so
+ * lookups, inserts and removals run in O(1) expected time without boxing.
+ * The key 0 marks an empty slot, which is safe because the tower only
+ * accepts positive ids.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class IdIndex<V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int shift;
+
+    /**
+     * Create an empty index.
+     */
+    public IdIndex() {
+        clear();
+    }
+
+    /**
+     * Find the value stored for an id.
+     * @param id the id to search for
+     * @return the stored value, or null if the id is not in the index
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        if (id <= 0) {
+            return null;
+        }
+        int slot = slotOf(id);
+        while (keys[slot] != 0) {
+            if (keys[slot] == id) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Check if an id is in the index.
+     * @param id the id to search for
+     * @return true if the id has a value
+     */
+    public boolean contains(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Store a value for an id, replacing any previous one.
+     * @param id the id (must be positive)
+     * @param value the value to store (must not be null)
+     */
+    public void put(int id, V value) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Ids must be positive");
+        }
+        if ((size + 1) * 4 > keys.length * 3) {   // keep load factor under 0.75
+            resize(keys.length * 2);
+        }
+        int slot = slotOf(id);
+        while (keys[slot] != 0) {
+            if (keys[slot] == id) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Remove the value stored for an id.
+     * Uses backward shift deletion, so no tombstones are left behind.
+     * @param id the id to remove
+     * @return the removed value, or null if the id was not in the index
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int id) {
+        if (id <= 0) {
+            return null;
+        }
+        int slot = slotOf(id);
+        while (keys[slot] != id) {
+            if (keys[slot] == 0) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        V removed = (V) values[slot];
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = slotOf(keys[next]);
+            // Move the entry back if its home is not in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Get the number of ids in the index.
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every id from the index.
+     */
+    public void clear() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        size = 0;
+    }
+
+    /**
+     * Home slot of an id (Fibonacci hashing).
+     * @param id the id
+     * @return the first slot to probe
+     */
+    private int slotOf(int id) {
+        return (id * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Grow the tables and reinsert every entry.
+     * @param capacity the new capacity (a power of two)
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for the IdIndex class.
+ * Verifies get, put, remove and growth against a HashMap.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class IdIndexTest
+{
+    private IdIndex<String> index;
+
+    /**
+     * Sets up the test fixture.
+     * Creates an empty index.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        index = new IdIndex<String>();
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test put and get of a few ids.
+     */
+    @Test
+    public void testPutAndGet()
+    {
+        index.put(1, "a");
+        index.put(7, "b");
+        assertEquals("a", index.get(1));
+        assertEquals("b", index.get(7));
+        assertNull(index.get(2));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Test non-positive ids are never found and cannot be stored.
+     */
+    @Test
+    public void testNonPositiveIds()
+    {
+        assertNull(index.get(0));
+        assertNull(index.get(-3));
+        assertThrows(IllegalArgumentException.class, () -> index.put(0, "x"));
+    }
+
+    /**
+     * Test remove returns the value and leaves the other ids reachable.
+     */
+    @Test
+    public void testRemove()
+    {
+        index.put(3, "c");
+        index.put(4, "d");
+        assertEquals("c", index.remove(3));
+        assertNull(index.remove(3));
+        assertNull(index.get(3));
+        assertEquals("d", index.get(4));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Test a long random sequence of operations matches a HashMap.
+     */
+    @Test
+    public void testMatchesHashMap()
+    {
+        HashMap<Integer, String> expected = new HashMap<Integer, String>();
+        Random random = new Random(42);
+        for (int step = 0; step < 200000; step++) {
+            int id = 1 + random.nextInt(5000);
+            if (random.nextBoolean()) {
+                index.put(id, "v" + id);
+                expected.put(id, "v" + id);
+            } else {
+                assertEquals(expected.remove(id), index.remove(id));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (int id = 1; id <= 5000; id++) {
+            assertEquals(expected.get(id), index.get(id));
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class Item {
     protected int height;
     private int topPosition;
     private int basePosition;
+    private int stackIndex;
     public static final int thick = 1;
 
     /**
@@ -88,6 +89,22 @@ public class Item {
         return this.basePosition;
     }
     
+    /**
+     * This method allow us to remember where the item is inside the stack
+     * @param index the position of the item in the stack (0 is the base)
+     */
+    protected void setStackIndex(int index){
+        this.stackIndex = index;
+    }
+    
+    /**
+     * This method gives the position of the item inside the stack
+     * @return int the stack index of the item (0 is the base)
+     */
+    protected int getStackIndex(){
+        return this.stackIndex;
+    }
+    
     /**
      * This method gives the topPosition
      * @return int the topPosition of any item
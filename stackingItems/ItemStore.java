@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+
+/**
+ * Storage engine behind a Tower.
+ * Keeps the items of the stack from base to top, their ids by kind and the
+ * data the nesting rule needs (base positions and the running maximum top),
+ * so the Tower only decides what to do and the store decides how to keep it.
+ *
+ * <p>Implementations:</p>
+ * <ul>
+ *   <li>ArrayItemStore: array list with O(1) push and suffix recalculation on removal</li>
+ *   <li>TreeItemStore: segment tree over slots with O(log n) removal anywhere
+ *       and O(1) fork</li>
+ * </ul>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public interface ItemStore {
+
+    /**
+     * @return the number of items in the stack
+     */
+    int size();
+
+    /**
+     * Get the item at a stack index. Its base position and stack index
+     * are brought up to date before it is returned.
+     * @param index the stack index (0 is the base)
+     * @return the item at that index
+     */
+    Item get(int index);
+
+    /**
+     * Put an item on the top of the stack. Its base position follows the
+     * nesting rule of the tower.
+     * @param item the item to add
+     */
+    void add(Item item);
+
+    /**
+     * Put an item at a stack index, moving up the items from there.
+     * Used to undo a removal.
+     * @param index the stack index the item gets (0 to size())
+     * @param item the item to insert
+     */
+    void insert(int index, Item item);
+
+    /**
+     * Remove an item that is in this store. The items above it are
+     * repositioned.
+     * @param item the item to remove
+     */
+    void remove(Item item);
+
+    /**
+     * Find the stack index of an item that is in this store.
+     * @param item the item to search for
+     * @return its stack index (0 is the base)
+     */
+    int indexOf(Item item);
+
+    /**
+     * Find a cup of the stack by its id.
+     * @param id the id to search for
+     * @return the matching Cup, or null if not found
+     */
+    Cup findCup(int id);
+
+    /**
+     * Find a lid of the stack by its id.
+     * @param id the id to search for
+     * @return the matching Lid, or null if not found
+     */
+    Lid findLid(int id);
+
+    /**
+     * Get the highest top among all the items.
+     * @return the height of the stack in cm
+     */
+    int height();
+
+    /**
+     * Find the first item whose top is above a height. Every item before
+     * it ends at that height or below.
+     * @param height a height in cm
+     * @return the stack index of that item, or size() if there is none
+     */
+    int firstReaching(int height);
+
+    /**
+     * Find the first item whose base is at a height or above. Bases grow
+     * from base to top, so every item after it starts there too.
+     * @param height a height in cm
+     * @return the stack index of that item, or size() if there is none
+     */
+    int firstStartingAt(int height);
+
+    /**
+     * Get the ids of the cups with their lid right above them. The set is
+     * kept up to date on every change, so this costs O(k) in the number
+     * of lided cups, not O(n).
+     * @return a new array with the ids, from base to top
+     */
+    int[] lidedCups();
+
+    /**
+     * Replace the whole stack with the given items, from base to top.
+     * @param items the new items (ids must be unique per kind)
+     */
+    void load(ArrayList<Item> items);
+
+    /**
+     * Create an independent store with the same items. Changes to either
+     * store are not seen by the other one.
+     * @return the new store
+     */
+    ItemStore fork();
+
+    /**
+     * Hand every item to a visitor, from base to top, with its position.
+     * Creates no object per item.
+     * @param visitor receives the kind, id, base and top of each item
+     */
+    void forEach(ItemVisitor visitor);
+
+    /**
+     * Get the items from base to top with their positions up to date.
+     * @return the list of items
+     */
+    ArrayList<Item> asList();
+}
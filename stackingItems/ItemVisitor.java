@@ -0,0 +1,22 @@
+/**
+ * Receives the items of a stack as plain values, from base to top, so a
+ * tower can be read without creating any object per item.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public interface ItemVisitor {
+    /** Kind of a cup. */
+    int CUP = 0;
+    /** Kind of a lid. */
+    int LID = 1;
+
+    /**
+     * Called once for each item of the stack, from base to top.
+     * @param kind CUP or LID
+     * @param id the id of the item
+     * @param base the base position of the item in cm
+     * @param top the top position of the item in cm
+     */
+    void visit(int kind, int id, int base, int top);
+}
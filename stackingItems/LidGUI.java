@@ -1,9 +1,10 @@
-import java.awt.Color;
+import java.util.ArrayList;
 
 /**
  * Visual representation of a Lid using Rectangle shapes from the shapes project.
  * Draws a lid as a simple colored horizontal bar representing the lid covering.
- * The lid is visually distinct from cups and is centered horizontally within the tower.
+ * The lid is visually distinct from cups. Its rectangle comes from
+ * TowerLayout.itemParts, like the parts of a cup.
  * Lids are always 1 cm (thin) in height.
  * 
  * @author Acero - Quiceno
@@ -13,41 +14,24 @@ public class LidGUI {
     private Lid lid;
     private Rectangle body;
     private boolean isDrawn;
-    private int scaleFactor;
-    private int towerPixelWidth;
+    private ArrayList<java.awt.Rectangle> drawnParts;   // parts of the last draw
 
     /**
      * Create a LidGUI for the given lid.
      * @param lid the lid to represent visually
-     * @param scaleFactor pixels per logical cm unit
-     * @param towerPixelWidth total pixel width of the tower area
      */
-    public LidGUI(Lid lid, int scaleFactor, int towerPixelWidth) {
+    public LidGUI(Lid lid) {
         this.lid = lid;
         this.body = new Rectangle();
         this.isDrawn = false;
-        this.scaleFactor = scaleFactor;
-        this.towerPixelWidth = towerPixelWidth;
     }
 
     /**
-     * Draw the lid at the given position on the canvas.
-     * Centered horizontally in the tower.
-     * @param x the x coordinate of the tower left edge in pixels
-     * @param y the y coordinate of the top edge of this lid in pixels
+     * Draw the lid where a layout puts it on the canvas.
+     * @param layout the layout of the tower on the canvas
      */
-    public void draw(int x, int y) {
-        int pixelDiameter = lid.getDiameter() * scaleFactor;
-        int pixelHeight = Item.thick * scaleFactor;
-        int centeredX = x + (towerPixelWidth - pixelDiameter) / 2;
-        Color color = lid.getColor();
-
-        body.changeSize(pixelHeight, pixelDiameter);
-        body.setPosition(centeredX, y);
-        body.changeColor(color);
-        body.makeVisible();
-
-        isDrawn = true;
+    public void draw(TowerLayout layout) {
+        draw(layout.itemParts(lid));
     }
 
     /**
@@ -62,13 +46,15 @@ public class LidGUI {
 
     /**
      * Update the position of the lid on the canvas.
-     * Erases the current drawing and redraws at the new position.
-     * @param x the new x coordinate of the tower left edge in pixels
-     * @param y the new y coordinate of the top edge in pixels
+     * Does nothing if the lid is already drawn there.
+     * @param layout the layout of the tower on the canvas
      */
-    public void updatePosition(int x, int y) {
-        erase();
-        draw(x, y);
+    public void updatePosition(TowerLayout layout) {
+        ArrayList<java.awt.Rectangle> parts = layout.itemParts(lid);
+        if (isDrawn && parts.equals(drawnParts)) {
+            return;
+        }
+        draw(parts);
     }
 
     /**
@@ -78,4 +64,17 @@ public class LidGUI {
     public Lid getLid() {
         return lid;
     }
+
+    /**
+     * Draw the body of the lid.
+     * @param parts the rectangle of TowerLayout.itemParts
+     */
+    private void draw(ArrayList<java.awt.Rectangle> parts) {
+        java.awt.Rectangle part = parts.get(0);
+        body.reshape(part.height, part.width, part.x, part.y, lid.getColor());
+        Rectangle.showAll(body);
+
+        isDrawn = true;
+        drawnParts = parts;
+    }
 }
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The ids of the lided cups of a stack: the cups with the lid of the same
+ * id right above them. A store keeps it up to date as it changes, telling
+ * it which pairs of neighbors appeared and which ones were split, so only
+ * the neighbors of the changed index are ever looked at.
+ *
+ * <p>The ids are kept in a dense int array, with an open addressing table
+ * from each id to its place in the array, so adding and removing cost
+ * O(1) and nothing is boxed. The ids in stack order are sorted once, with
+ * a radix sort on their stack positions, and kept until the set changes:
+ * moving other items never changes the order of the lided cups, only a
+ * reload does, and a reload builds the set again.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class LidedCups {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] ids;       // the lided cups, in no order
+    private int size;
+    private int[] keys;      // table: id, 0 for an empty slot
+    private int[] places;    // table: place of the id in ids
+    private int mask;
+    private int shift;
+    private int[] ordered;   // ids from base to top, null if the set changed
+
+    /**
+     * Create an empty set.
+     */
+    public LidedCups() {
+        clear();
+    }
+
+    /**
+     * Record that below is now right under above.
+     * @param below the lower item, may be null
+     * @param above the upper item, may be null
+     */
+    public void link(Item below, Item above) {
+        if (isLided(below, above)) {
+            add(below.getId());
+        }
+    }
+
+    /**
+     * Record that below is no longer right under above.
+     * @param below the lower item, may be null
+     * @param above the upper item, may be null
+     */
+    public void unlink(Item below, Item above) {
+        if (isLided(below, above)) {
+            remove(below.getId());
+        }
+    }
+
+    /**
+     * Build the set again for a whole stack, in O(n).
+     * @param items the stack from base to top
+     */
+    public void rebuild(List<Item> items) {
+        clear();
+        for (int idx = 1; idx < items.size(); idx++) {
+            link(items.get(idx - 1), items.get(idx));
+        }
+    }
+
+    /**
+     * Remove every id from the set.
+     */
+    public void clear() {
+        ids = new int[INITIAL_CAPACITY];
+        size = 0;
+        keys = new int[INITIAL_CAPACITY];
+        places = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        ordered = null;
+    }
+
+    /**
+     * @return the number of lided cups
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id the id of a cup
+     * @return true if that cup is lided
+     */
+    public boolean contains(int id) {
+        return id > 0 && slotOf(id) >= 0;
+    }
+
+    /**
+     * Get the ids of the lided cups from base to top, in O(k).
+     * @param position gives the stack index of the cup with an id, or any
+     *        number that grows from base to top, such as a slot
+     * @return a new array with the ids
+     */
+    public int[] inStackOrder(IntUnaryOperator position) {
+        if (ordered == null) {
+            ordered = sortByPosition(position);
+        }
+        return ordered.clone();
+    }
+
+    /**
+     * Create an independent copy of the set.
+     * @return the copy
+     */
+    public LidedCups copy() {
+        LidedCups copy = new LidedCups();
+        copy.ids = ids.clone();
+        copy.size = size;
+        copy.keys = keys.clone();
+        copy.places = places.clone();
+        copy.mask = mask;
+        copy.shift = shift;
+        copy.ordered = ordered;   // never changed, only replaced
+        return copy;
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Check if two neighbors are a cup with its lid on it.
+     * @param below the lower item, may be null
+     * @param above the upper item, may be null
+     * @return true if below is a cup and above is its lid
+     */
+    private static boolean isLided(Item below, Item above) {
+        return below instanceof Cup && above instanceof Lid && below.getId() == above.getId();
+    }
+
+    /**
+     * Add an id that may already be in the set.
+     * @param id the id of the cup
+     */
+    private void add(int id) {
+        if (slotOf(id) >= 0) {
+            return;
+        }
+        if ((size + 1) * 4 > keys.length * 3) {   // keep load factor under 0.75
+            resize(keys.length * 2);
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int slot = homeOf(id);
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        places[slot] = size;
+        ids[size++] = id;
+        ordered = null;
+    }
+
+    /**
+     * Remove an id, moving the last id into its place.
+     * Uses backward shift deletion, so no tombstones are left behind.
+     * @param id the id of the cup
+     */
+    private void remove(int id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return;
+        }
+        int place = places[slot];
+        int last = ids[--size];
+        ids[place] = last;
+        if (last != id) {
+            places[slotOf(last)] = place;
+        }
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = homeOf(keys[next]);
+            // Move the entry back if its home is not in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                places[hole] = places[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        ordered = null;
+    }
+
+    /**
+     * Find the slot of an id in the table.
+     * @param id the id, positive
+     * @return the slot, or -1 if the id is not in the set
+     */
+    private int slotOf(int id) {
+        int slot = homeOf(id);
+        while (keys[slot] != 0) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Home slot of an id (Fibonacci hashing).
+     * @param id the id
+     * @return the first slot to probe
+     */
+    private int homeOf(int id) {
+        return (id * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Grow the table and put every id back in it.
+     * @param capacity the new capacity (a power of two)
+     */
+    private void resize(int capacity) {
+        keys = new int[capacity];
+        places = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        for (int place = 0; place < size; place++) {
+            int slot = homeOf(ids[place]);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = ids[place];
+            places[slot] = place;
+        }
+    }
+
+    /**
+     * Sort the ids by their positions with an LSD radix sort on bytes.
+     * Passes over bytes that are zero in every position are skipped.
+     * @param position the position of each id
+     * @return a new array with the ids from base to top
+     */
+    private int[] sortByPosition(IntUnaryOperator position) {
+        int[] sortedIds = Arrays.copyOf(ids, size);
+        int[] sortedKeys = new int[size];
+        int maxKey = 0;
+        for (int k = 0; k < size; k++) {
+            sortedKeys[k] = position.applyAsInt(sortedIds[k]);
+            maxKey = Math.max(maxKey, sortedKeys[k]);
+        }
+        int[] bufferIds = new int[size];
+        int[] bufferKeys = new int[size];
+        int[] count = new int[257];
+        for (int shift = 0; shift < 32 && (maxKey >>> shift) != 0; shift += 8) {
+            Arrays.fill(count, 0);
+            for (int k = 0; k < size; k++) {
+                count[((sortedKeys[k] >>> shift) & 0xFF) + 1]++;
+            }
+            for (int digit = 0; digit < 256; digit++) {
+                count[digit + 1] += count[digit];
+            }
+            for (int k = 0; k < size; k++) {
+                int to = count[(sortedKeys[k] >>> shift) & 0xFF]++;
+                bufferIds[to] = sortedIds[k];
+                bufferKeys[to] = sortedKeys[k];
+            }
+            int[] swap = sortedIds;
+            sortedIds = bufferIds;
+            bufferIds = swap;
+            swap = sortedKeys;
+            sortedKeys = bufferKeys;
+            bufferKeys = swap;
+        }
+        return sortedIds;
+    }
+}
@@ -0,0 +1,144 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the LidedCups class.
+ * Checks the set kept by each store against a scan of the whole stack
+ * after random changes, undos, reorderings and forks.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class LidedCupsTest
+{
+    private LidedCups lided;
+
+    /**
+     * Sets up the test fixture.
+     * Creates an empty set.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        lided = new LidedCups();
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test only a cup under the lid of the same id is linked.
+     */
+    @Test
+    public void testLinkAndUnlink()
+    {
+        lided.link(new Cup(2, null), new Lid(2, null));
+        lided.link(new Cup(3, null), new Lid(4, null));
+        lided.link(new Lid(5, null), new Cup(5, null));
+        lided.link(null, new Lid(6, null));
+        assertEquals(1, lided.size());
+        assertTrue(lided.contains(2));
+        lided.unlink(new Cup(2, null), new Lid(2, null));
+        assertEquals(0, lided.size());
+        assertFalse(lided.contains(2));
+    }
+
+    /**
+     * Test the ids come out in the order of their positions, and the
+     * order is computed again only after a change.
+     */
+    @Test
+    public void testStackOrder()
+    {
+        for (int id = 1; id <= 300; id++) {
+            lided.link(new Cup(id, null), new Lid(id, null));
+        }
+        int[] ordered = lided.inStackOrder(id -> 1000 - id);
+        assertEquals(300, ordered[0]);
+        assertEquals(1, ordered[299]);
+        lided.unlink(new Cup(300, null), new Lid(300, null));
+        assertArrayEquals(new int[]{1, 2, 3}, Arrays.copyOf(lided.inStackOrder(id -> id), 3));
+        assertEquals(299, lided.inStackOrder(id -> id).length);
+    }
+
+    /**
+     * Test both stores agree with a scan of the stack after random changes.
+     */
+    @Test
+    public void testStoresMatchScan()
+    {
+        Random random = new Random(24);
+        Tower arrayTower = Tower.headless(10, 1000000, new ArrayItemStore());
+        Tower treeTower = Tower.headless(10, 1000000, new TreeItemStore());
+        for (int step = 0; step < 3000; step++) {
+            int id = 1 + random.nextInt(40);
+            int choice = random.nextInt(10);
+            for (Tower tower : new Tower[]{arrayTower, treeTower}) {
+                switch (choice) {
+                    case 0: case 1: tower.pushCup(id); break;
+                    case 2: case 3: tower.pushLid(id); break;
+                    case 4: tower.removeCup(id); break;
+                    case 5: tower.removeLid(id); break;
+                    case 6: tower.popLid(); break;
+                    case 7: tower.undo(); break;
+                    case 8: tower.redo(); break;
+                    default:
+                        if (random.nextInt(10) == 0) {
+                            tower.orderTower();
+                        } else {
+                            tower.popCup();
+                        }
+                }
+            }
+            assertArrayEquals(scan(arrayTower), arrayTower.lidedCups());
+            assertArrayEquals(scan(treeTower), treeTower.lidedCups());
+        }
+    }
+
+    /**
+     * Test a fork keeps its own set.
+     */
+    @Test
+    public void testForkKeepsItsOwnSet()
+    {
+        Tower tower = Tower.headless(10, 100, new TreeItemStore());
+        tower.pushCup(5);
+        tower.pushLid(5);
+        Tower branch = tower.fork();
+        branch.popLid();
+        tower.pushCup(2);
+        tower.pushLid(2);
+        assertArrayEquals(new int[]{5, 2}, tower.lidedCups());
+        assertArrayEquals(new int[0], branch.lidedCups());
+    }
+
+    /**
+     * Find the lided cups with a scan of the whole stack.
+     * @param tower the tower
+     * @return the ids from base to top
+     */
+    private int[] scan(Tower tower)
+    {
+        List<Item> items = tower.getStack();
+        int[] found = new int[items.size()];
+        int count = 0;
+        for (int idx = 0; idx + 1 < items.size(); idx++) {
+            Item current = items.get(idx);
+            Item next = items.get(idx + 1);
+            if (current instanceof Cup && next instanceof Lid && current.getId() == next.getId()) {
+                found[count++] = current.getId();
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/**
+ * Immutable index from positive int ids to values, shared between forks.
+ * It is a bitmapped trie over the bits of the id, five bits per level, so
+ * it is at most seven levels deep. An update copies only the path to the
+ * id and returns a new index; every older index stays valid, so a store
+ * can be forked in O(1) by keeping a reference to it.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class PersistentIdIndex<V> {
+    private static final int BITS = 5;
+    private static final int TOP_SHIFT = 30;   // ids are positive, so bit 31 is always 0
+
+    private final Node root;   // null when the index is empty
+    private final int size;
+
+    /**
+     * Create an empty index.
+     */
+    public PersistentIdIndex() {
+        this(null, 0);
+    }
+
+    /**
+     * Create an index with the given trie.
+     * @param root the root node, null if empty
+     * @param size the number of ids in the trie
+     */
+    private PersistentIdIndex(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Build an index with many ids at once. The entries are sorted by id
+     * and each node of the trie is made once, instead of copying a path
+     * for every put.
+     * @param ids the ids, positive and distinct
+     * @param values values[k] is stored for ids[k]
+     * @param count how many entries of the arrays are used
+     * @return the new index
+     */
+    public static <V> PersistentIdIndex<V> of(int[] ids, V[] values, int count) {
+        long[] keys = new long[count];   // id in the high half, entry in the low half
+        for (int k = 0; k < count; k++) {
+            if (ids[k] <= 0) {
+                throw new IllegalArgumentException("Ids must be positive");
+            }
+            keys[k] = ((long) ids[k] << 32) | k;
+        }
+        Arrays.sort(keys);
+        Node root = (count == 0) ? null : build(keys, values, 0, count, TOP_SHIFT);
+        return new PersistentIdIndex<V>(root, count);
+    }
+
+    /**
+     * Find the value stored for an id.
+     * @param id the id to search for
+     * @return the stored value, or null if the id is not in the index
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        if (id <= 0) {
+            return null;
+        }
+        Node node = root;
+        for (int shift = TOP_SHIFT; node != null; shift -= BITS) {
+            int bit = bitOf(id, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.slots[node.position(bit)];
+            if (shift == 0) {
+                return (V) child;
+            }
+            node = (Node) child;
+        }
+        return null;
+    }
+
+    /**
+     * Store a value for an id, replacing any previous one.
+     * @param id the id (must be positive)
+     * @param value the value to store (must not be null)
+     * @return a new index with the value; this index does not change
+     */
+    public PersistentIdIndex<V> put(int id, V value) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Ids must be positive");
+        }
+        int newSize = (get(id) == null) ? size + 1 : size;
+        return new PersistentIdIndex<V>(put(root, id, TOP_SHIFT, value), newSize);
+    }
+
+    /**
+     * Remove the value stored for an id.
+     * @param id the id to remove
+     * @return a new index without the id, or this index if the id was not in it
+     */
+    public PersistentIdIndex<V> remove(int id) {
+        if (get(id) == null) {
+            return this;
+        }
+        return new PersistentIdIndex<V>(remove(root, id, TOP_SHIFT), size - 1);
+    }
+
+    /**
+     * Get the number of ids in the index.
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Bit of the bitmap that a level of the id selects.
+     * @param id the id
+     * @param shift the lowest bit of the id used at this level
+     * @return a mask with one bit set
+     */
+    private static int bitOf(int id, int shift) {
+        return 1 << ((id >>> shift) & ((1 << BITS) - 1));
+    }
+
+    /**
+     * Build the subtrie of a run of sorted keys that share the bits of the
+     * id above shift + BITS.
+     * @param keys the sorted keys, id and entry
+     * @param values the values of the entries
+     * @param from first key of the run
+     * @param to end of the run (exclusive)
+     * @param shift the lowest bit of the id used at this level
+     * @return the subtrie
+     */
+    private static Node build(long[] keys, Object[] values, int from, int to, int shift) {
+        int firstBit = bitOf((int) (keys[from] >>> 32), shift);
+        if (shift > 0 && bitOf((int) (keys[to - 1] >>> 32), shift) == firstBit) {
+            // Sorted: the first and last ids share this level, so every id does
+            return new Node(firstBit, new Object[]{build(keys, values, from, to, shift - BITS)});
+        }
+        int bitmap = 0;
+        for (int k = from; k < to; k++) {
+            bitmap |= bitOf((int) (keys[k] >>> 32), shift);
+        }
+        Object[] slots = new Object[Integer.bitCount(bitmap)];
+        int start = from;
+        for (int pos = 0; pos < slots.length; pos++) {
+            int bit = bitOf((int) (keys[start] >>> 32), shift);
+            int end = start + 1;
+            while (end < to && bitOf((int) (keys[end] >>> 32), shift) == bit) {
+                end++;
+            }
+            if (shift > 0) {
+                slots[pos] = build(keys, values, start, end, shift - BITS);
+            } else if (end - start > 1) {
+                throw new IllegalArgumentException("Duplicate id " + (keys[start] >>> 32));
+            } else {
+                slots[pos] = values[(int) keys[start]];
+            }
+            start = end;
+        }
+        return new Node(bitmap, slots);
+    }
+
+    /**
+     * Copy the path to an id, storing the value at its end.
+     * @param node the subtrie, may be null
+     * @param id the id
+     * @param shift the lowest bit of the id used at this level
+     * @param value the value to store
+     * @return the new subtrie
+     */
+    private static Node put(Node node, int id, int shift, Object value) {
+        if (node == null) {
+            node = Node.EMPTY;
+        }
+        int bit = bitOf(id, shift);
+        int pos = node.position(bit);
+        boolean present = (node.bitmap & bit) != 0;
+        Object child = (shift == 0) ? value
+                       : put(present ? (Node) node.slots[pos] : null, id, shift - BITS, value);
+        if (present) {
+            Object[] slots = node.slots.clone();
+            slots[pos] = child;
+            return new Node(node.bitmap, slots);
+        }
+        Object[] slots = new Object[node.slots.length + 1];
+        System.arraycopy(node.slots, 0, slots, 0, pos);
+        slots[pos] = child;
+        System.arraycopy(node.slots, pos, slots, pos + 1, node.slots.length - pos);
+        return new Node(node.bitmap | bit, slots);
+    }
+
+    /**
+     * Copy the path to an id that is in the subtrie, dropping its value.
+     * @param node the subtrie
+     * @param id the id
+     * @param shift the lowest bit of the id used at this level
+     * @return the new subtrie, or null if it became empty
+     */
+    private static Node remove(Node node, int id, int shift) {
+        int bit = bitOf(id, shift);
+        int pos = node.position(bit);
+        Node child = (shift == 0) ? null : remove((Node) node.slots[pos], id, shift - BITS);
+        if (child != null) {
+            Object[] slots = node.slots.clone();
+            slots[pos] = child;
+            return new Node(node.bitmap, slots);
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, pos);
+        System.arraycopy(node.slots, pos + 1, slots, pos, slots.length - pos);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    /**
+     * Node of the trie. Only the children that exist are stored, in the
+     * order of their bits in the bitmap.
+     */
+    private static class Node {
+        private static final Node EMPTY = new Node(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;   // child nodes, or values on the last level
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /**
+         * Index in slots of the child selected by a bit.
+         * @param bit a mask with one bit set
+         * @return the number of children before it
+         */
+        int position(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for the PersistentIdIndex class.
+ * Verifies get, put and remove against a HashMap, and that older
+ * versions of the index never change.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class PersistentIdIndexTest
+{
+    private PersistentIdIndex<String> index;
+
+    /**
+     * Sets up the test fixture.
+     * Creates an empty index.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        index = new PersistentIdIndex<String>();
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test put and get of a few ids, including the largest one.
+     */
+    @Test
+    public void testPutAndGet()
+    {
+        index = index.put(1, "a").put(7, "b").put(Integer.MAX_VALUE, "c");
+        assertEquals("a", index.get(1));
+        assertEquals("b", index.get(7));
+        assertEquals("c", index.get(Integer.MAX_VALUE));
+        assertNull(index.get(2));
+        assertEquals(3, index.size());
+    }
+
+    /**
+     * Test non-positive ids are never found and cannot be stored.
+     */
+    @Test
+    public void testNonPositiveIds()
+    {
+        assertNull(index.get(0));
+        assertNull(index.get(-3));
+        assertThrows(IllegalArgumentException.class, () -> index.put(0, "x"));
+    }
+
+    /**
+     * Test updates return new versions and leave the old ones as they were.
+     */
+    @Test
+    public void testOlderVersionsDoNotChange()
+    {
+        PersistentIdIndex<String> first = index.put(3, "c").put(4, "d");
+        PersistentIdIndex<String> second = first.remove(3).put(4, "e");
+        assertEquals("c", first.get(3));
+        assertEquals("d", first.get(4));
+        assertNull(second.get(3));
+        assertEquals("e", second.get(4));
+        assertEquals(2, first.size());
+        assertEquals(1, second.size());
+        assertSame(second, second.remove(3));
+    }
+
+    /**
+     * Test a long random sequence of operations matches a HashMap.
+     */
+    @Test
+    public void testMatchesHashMap()
+    {
+        HashMap<Integer, String> expected = new HashMap<Integer, String>();
+        Random random = new Random(42);
+        for (int step = 0; step < 200000; step++) {
+            int id = 1 + random.nextInt(5000);
+            if (random.nextBoolean()) {
+                index = index.put(id, "v" + id);
+                expected.put(id, "v" + id);
+            } else {
+                index = index.remove(id);
+                expected.remove(id);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (int id = 1; id <= 5000; id++) {
+            assertEquals(expected.get(id), index.get(id));
+        }
+    }
+
+    /**
+     * Test a bulk build holds the same ids as the same puts one by one,
+     * and rejects repeated ids.
+     */
+    @Test
+    public void testBulkBuild()
+    {
+        Random random = new Random(5);
+        int[] ids = new int[3000];
+        String[] values = new String[ids.length];
+        int count = 0;
+        HashMap<Integer, String> expected = new HashMap<Integer, String>();
+        while (count < ids.length) {
+            int id = 1 + random.nextInt(Integer.MAX_VALUE - 1);
+            if (!expected.containsKey(id)) {
+                ids[count] = id;
+                values[count] = "v" + id;
+                expected.put(id, values[count]);
+                count++;
+            }
+        }
+        PersistentIdIndex<String> built = PersistentIdIndex.of(ids, values, count);
+        assertEquals(count, built.size());
+        for (int k = 0; k < count; k++) {
+            assertEquals(expected.get(ids[k]), built.get(ids[k]));
+        }
+        int missing = 1;
+        while (expected.containsKey(missing)) {
+            missing++;
+        }
+        assertNull(built.get(missing));
+        PersistentIdIndex<String> changed = built.remove(ids[0]).put(7, "seven");
+        assertEquals(expected.get(ids[0]), built.get(ids[0]));
+        assertNull(changed.get(ids[0]));
+        assertEquals("seven", changed.get(7));
+        assertEquals(0, PersistentIdIndex.of(new int[0], new String[0], 0).size());
+        assertThrows(IllegalArgumentException.class,
+                     () -> PersistentIdIndex.of(new int[]{3, 9, 3}, new String[]{"a", "b", "c"}, 3));
+    }
+}
@@ -1,4 +1,6 @@
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A rectangle that can be manipulated and that draws itself on a canvas.
@@ -11,6 +13,7 @@ import java.awt.*;
 public class Rectangle{
 
     public static int EDGES = 4;
+    private static final int SLOW_MOVE_SPEED = 2;   // pixels per animation frame
     
     private int height;
     private int width;
@@ -197,42 +200,22 @@ public class Rectangle{
 
     /**
      * Slowly move the rectangle horizontally.
+     * The position changes at once; the movement is shown by the Animator
+     * and this method returns without waiting for it.
      * @param distance the desired distance in pixels
      */
     public void slowMoveHorizontal(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            xPosition += delta;
-            draw();
-        }
+        slowMove(distance, 0);
     }
 
     /**
      * Slowly move the rectangle vertically.
+     * The position changes at once; the movement is shown by the Animator
+     * and this method returns without waiting for it.
      * @param distance the desired distance in pixels
      */
     public void slowMoveVertical(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            yPosition += delta;
-            draw();
-        }
+        slowMove(0, distance);
     }
 
     /**
@@ -257,25 +240,120 @@ public class Rectangle{
         draw();
     }
 
+    /**
+     * Change the size, the position and the color without drawing.
+     * The change shows on the next draw, e.g. through showAll.
+     * @param newHeight the new height in pixels. newHeight must be >=0.
+     * @param newWidth the new width in pixels. newWidth must be >=0.
+     * @param x the new x position
+     * @param y the new y position
+     * @param newColor the new color
+     */
+    public void reshape(int newHeight, int newWidth, int x, int y, Color newColor){
+        height = newHeight;
+        width = newWidth;
+        xPosition = x;
+        yPosition = y;
+        color = newColor;
+    }
+
+    /**
+     * Make many rectangles visible with a single Canvas call, in order,
+     * so the last one ends on top. A rectangle that is still showing a
+     * movement is drawn after that movement, like makeVisible does.
+     * @param rectangles the rectangles to show
+     */
+    public static void showAll(Rectangle... rectangles){
+        Animator animator = Animator.getAnimator();
+        Object[] owners = new Object[rectangles.length];
+        Color[] colors = new Color[rectangles.length];
+        Shape[] shapes = new Shape[rectangles.length];
+        int count = 0;
+        for(Rectangle r : rectangles) {
+            r.isVisible = true;
+            if(animator.isAnimating(r)) {
+                r.draw();
+            } else {
+                owners[count] = r;
+                colors[count] = r.color;
+                shapes[count] = new java.awt.Rectangle(r.xPosition, r.yPosition, r.width, r.height);
+                count++;
+            }
+        }
+        if(count > 0) {
+            Canvas.getCanvas().drawAll(Arrays.copyOf(owners, count),
+                Arrays.copyOf(colors, count), Arrays.copyOf(shapes, count));
+        }
+    }
+
+    /**
+     * Make many rectangles invisible with a single Canvas call.
+     * @param rectangles the rectangles to hide
+     */
+    public static void hideAll(Rectangle... rectangles){
+        Animator animator = Animator.getAnimator();
+        ArrayList<Rectangle> visible = new ArrayList<Rectangle>(rectangles.length);
+        for(Rectangle r : rectangles) {
+            if(r.isVisible) {
+                animator.cancel(r);
+                visible.add(r);
+                r.isVisible = false;
+            }
+        }
+        if(!visible.isEmpty()) {
+            Canvas.getCanvas().eraseAll(visible);
+        }
+    }
+
     /*
-     * Draw the rectangle with current specifications on screen.
+     * Move the rectangle and queue the frames that show the movement.
      */
+    private void slowMove(int dx, int dy){
+        final int startX = xPosition;
+        final int startY = yPosition;
+        xPosition += dx;
+        yPosition += dy;
+        if(isVisible) {
+            int distance = Math.max(Math.abs(dx), Math.abs(dy));
+            int frames = Math.max(1, (distance + SLOW_MOVE_SPEED - 1) / SLOW_MOVE_SPEED);
+            Animator.getAnimator().animate(this, frames,
+                frame -> drawAt(startX + dx * frame / frames, startY + dy * frame / frames));
+        }
+    }
 
+    /*
+     * Draw the rectangle with current specifications on screen.
+     * It is drawn at once, unless a movement is still being shown: then it
+     * is drawn after that movement.
+     */
     private void draw() {
+        if(isVisible) {
+            Animator animator = Animator.getAnimator();
+            if(animator.isAnimating(this)) {
+                animator.animate(this, 1, frame -> drawAt(xPosition, yPosition));
+            } else {
+                drawAt(xPosition, yPosition);
+            }
+        }
+    }
+
+    /*
+     * Draw the rectangle at the given position, without waiting.
+     */
+    private void drawAt(int x, int y) {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
             canvas.draw(this, color,
-                new java.awt.Rectangle(xPosition, yPosition, 
-                                       width, height));
-            canvas.wait(10);
+                new java.awt.Rectangle(x, y, width, height));
         }
     }
 
     /*
-     * Erase the rectangle on screen.
+     * Erase the rectangle on screen, dropping the movements not shown yet.
      */
     private void erase(){
         if(isVisible) {
+            Animator.getAnimator().cancel(this);
             Canvas canvas = Canvas.getCanvas();
             canvas.erase(this);
         }
@@ -0,0 +1,136 @@
+/**
+ * Read-only view of the stack of a Tower as a flat sequence of ints, like
+ * an IntBuffer: four ints per item, from base to top, holding the kind
+ * (ItemVisitor.CUP or ItemVisitor.LID), the id, the base and the top.
+ * The int at index 4 * k + TOP is the top of the k-th item.
+ *
+ * <p>The view is live: it always shows the current stack, and reading it
+ * creates no objects. With the default store each read costs O(1); with
+ * a TreeItemStore it costs O(log n).</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class StackView {
+    /** Ints per item. */
+    public static final int FIELDS = 4;
+    /** Offset of the kind in the ints of an item. */
+    public static final int KIND = 0;
+    /** Offset of the id in the ints of an item. */
+    public static final int ID = 1;
+    /** Offset of the base position in the ints of an item. */
+    public static final int BASE = 2;
+    /** Offset of the top position in the ints of an item. */
+    public static final int TOP = 3;
+
+    private final ItemStore stack;
+
+    /**
+     * Create a view over the store of a tower.
+     * @param stack the store
+     */
+    StackView(ItemStore stack) {
+        this.stack = stack;
+    }
+
+    /**
+     * @return the number of items in the stack
+     */
+    public int size() {
+        return stack.size();
+    }
+
+    /**
+     * @return the number of ints in the view, FIELDS per item
+     */
+    public int limit() {
+        return FIELDS * stack.size();
+    }
+
+    /**
+     * Read one int of the view.
+     * @param index the index of the int, 4 * item + field
+     * @return the int
+     * @throws IndexOutOfBoundsException if index is not below limit()
+     */
+    public int get(int index) {
+        if (index < 0 || index >= limit()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Limit: " + limit());
+        }
+        return field(stack.get(index / FIELDS), index % FIELDS);
+    }
+
+    /**
+     * Copy a run of ints of the view into an array, like IntBuffer.get.
+     * @param index the index of the first int to copy
+     * @param dst the array that receives the ints
+     * @param offset where the first int goes in dst
+     * @param length how many ints to copy
+     * @throws IndexOutOfBoundsException if the run is not in the view or in dst
+     */
+    public void get(int index, int[] dst, int offset, int length) {
+        if (index < 0 || length < 0 || index + length > limit()
+                || offset < 0 || offset + length > dst.length) {
+            throw new IndexOutOfBoundsException("Run [" + index + ", " + (index + length)
+                                                + ") of limit " + limit());
+        }
+        int at = index;
+        while (at < index + length) {
+            Item item = stack.get(at / FIELDS);
+            for (int field = at % FIELDS; field < FIELDS && at < index + length; field++, at++) {
+                dst[offset++] = field(item, field);
+            }
+        }
+    }
+
+    /**
+     * @param index a stack index
+     * @return ItemVisitor.CUP or ItemVisitor.LID
+     */
+    public int kind(int index) {
+        return field(stack.get(index), KIND);
+    }
+
+    /**
+     * @param index a stack index
+     * @return the id of the item there
+     */
+    public int id(int index) {
+        return stack.get(index).getId();
+    }
+
+    /**
+     * @param index a stack index
+     * @return the base position of the item there in cm
+     */
+    public int base(int index) {
+        return stack.get(index).getBasePosition();
+    }
+
+    /**
+     * @param index a stack index
+     * @return the top position of the item there in cm
+     */
+    public int top(int index) {
+        return stack.get(index).getTopPosition();
+    }
+
+    /**
+     * One int of an item.
+     * @param item the item, with its position up to date
+     * @param field KIND, ID, BASE or TOP
+     * @return the int
+     */
+    private static int field(Item item, int field) {
+        switch (field) {
+            case KIND:
+                return (item instanceof Cup) ? ItemVisitor.CUP : ItemVisitor.LID;
+            case ID:
+                return item.getId();
+            case BASE:
+                return item.getBasePosition();
+            default:
+                return item.getTopPosition();
+        }
+    }
+}
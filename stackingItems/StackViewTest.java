@@ -0,0 +1,209 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the StackView and StackWriter classes and the visitors
+ * of the stores. Checks every way of streaming the stack against the
+ * items of getStack() and the strings of stackingStack().
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class StackViewTest
+{
+    private Tower arrayTower;
+    private Tower treeTower;
+
+    /**
+     * Sets up the test fixture.
+     * Builds the same random tower with each store, removing some items
+     * so the positions above them are recomputed.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        arrayTower = Tower.headless(10, 1000000, new ArrayItemStore());
+        treeTower = Tower.headless(10, 1000000, new TreeItemStore());
+        Random random = new Random(25);
+        for (int step = 0; step < 400; step++) {
+            int id = 1 + random.nextInt(60);
+            int choice = random.nextInt(6);
+            for (Tower tower : new Tower[]{arrayTower, treeTower}) {
+                switch (choice) {
+                    case 0: case 1: tower.pushCup(id); break;
+                    case 2: case 3: tower.pushLid(id); break;
+                    case 4: tower.removeCup(id); break;
+                    default: tower.removeLid(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test both stores visit the items of getStack(), in order, with
+     * their positions.
+     */
+    @Test
+    public void testForEachMatchesItems()
+    {
+        for (Tower tower : new Tower[]{arrayTower, treeTower}) {
+            List<Item> items = tower.getStack();
+            int[] next = {0};
+            tower.forEach((kind, id, base, top) -> {
+                Item item = items.get(next[0]++);
+                assertEquals(item instanceof Cup ? ItemVisitor.CUP : ItemVisitor.LID, kind);
+                assertEquals(item.getId(), id);
+                assertEquals(item.getBasePosition(), base);
+                assertEquals(item.getTopPosition(), top);
+            });
+            assertEquals(items.size(), next[0]);
+        }
+    }
+
+    /**
+     * Test single and bulk reads of the view give the same ints as the
+     * accessors of each item.
+     */
+    @Test
+    public void testViewReads()
+    {
+        for (Tower tower : new Tower[]{arrayTower, treeTower}) {
+            StackView view = tower.view();
+            assertSame(view, tower.view());
+            assertEquals(StackView.FIELDS * view.size(), view.limit());
+            int[] all = new int[view.limit() + 2];
+            view.get(0, all, 1, view.limit());
+            for (int idx = 0; idx < view.size(); idx++) {
+                int at = StackView.FIELDS * idx;
+                assertEquals(view.kind(idx), view.get(at + StackView.KIND));
+                assertEquals(view.id(idx), all[1 + at + StackView.ID]);
+                assertEquals(view.base(idx), all[1 + at + StackView.BASE]);
+                assertEquals(view.top(idx), all[1 + at + StackView.TOP]);
+            }
+            int[] run = new int[5];
+            view.get(3, run, 0, 5);   // starts at the top of the first item
+            assertEquals(view.top(0), run[0]);
+            assertEquals(view.id(1), run[2]);
+            assertThrows(IndexOutOfBoundsException.class, () -> view.get(view.limit()));
+        }
+    }
+
+    /**
+     * Test the view follows the changes of the tower.
+     */
+    @Test
+    public void testViewIsLive()
+    {
+        Tower tower = Tower.headless(10, 100);
+        StackView view = tower.view();
+        tower.pushCup(4);
+        tower.pushLid(4);
+        assertEquals(2, view.size());
+        assertEquals(ItemVisitor.LID, view.kind(1));
+        tower.removeCup(4);
+        assertEquals(1, view.size());
+        assertEquals(0, view.base(0));
+    }
+
+    /**
+     * Test the text written to characters and to a channel has the
+     * strings of stackingStack(), one item per line.
+     */
+    @Test
+    public void testWriteStackMatchesStackingStack() throws IOException
+    {
+        for (Tower tower : new Tower[]{arrayTower, treeTower}) {
+            StringBuilder expected = new StringBuilder();
+            String[] strings = tower.stackingStack();
+            for (int k = 0; k < strings.length; k += 2) {
+                expected.append(strings[k]).append(' ').append(strings[k + 1]).append('\n');
+            }
+            StringBuilder text = new StringBuilder();
+            tower.writeStack(text);
+            assertEquals(expected.toString(), text.toString());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            WritableByteChannel channel = Channels.newChannel(bytes);
+            tower.writeStack(channel);
+            assertEquals(expected.toString(), bytes.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Test a stack larger than the buffer of a channel is written whole.
+     */
+    @Test
+    public void testWriteLargeStackToChannel() throws IOException
+    {
+        Tower tower = Tower.headless(10, Integer.MAX_VALUE);
+        for (int id = 1; id <= 2000; id++) {
+            tower.pushLid(1000000000 + id);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tower.writeStack(Channels.newChannel(bytes));
+        String[] lines = bytes.toString(StandardCharsets.US_ASCII).split("\n");
+        assertEquals(2000, lines.length);
+        assertEquals("lid 1000000001", lines[0]);
+        assertEquals("lid 1000002000", lines[1999]);
+    }
+
+    /**
+     * Test an Appendable that fails passes its IOException to the caller.
+     */
+    @Test
+    public void testWriteStackFailure()
+    {
+        Appendable broken = new Appendable() {
+            public Appendable append(CharSequence text) throws IOException {
+                throw new IOException("roto");
+            }
+
+            public Appendable append(CharSequence text, int start, int end) throws IOException {
+                throw new IOException("roto");
+            }
+
+            public Appendable append(char c) throws IOException {
+                throw new IOException("roto");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> arrayTower.writeStack(broken));
+        assertEquals("roto", e.getMessage());
+    }
+
+    /**
+     * Test the list of getStack() cannot be changed from outside and
+     * follows the tower with both stores.
+     */
+    @Test
+    public void testGetStackIsReadOnlyAndLive()
+    {
+        for (Tower tower : new Tower[]{arrayTower, treeTower}) {
+            List<Item> items = tower.getStack();
+            assertThrows(UnsupportedOperationException.class, () -> items.remove(0));
+            assertThrows(UnsupportedOperationException.class, () -> items.add(new Cup(99, null)));
+            int size = items.size();
+            Item top = items.get(size - 1);
+            tower.pushLid(1000);
+            assertEquals(size + 1, items.size());
+            assertEquals(1000, items.get(size).getId());
+            assertEquals(top.getTopPosition(), items.get(size).getBasePosition());
+        }
+    }
+}
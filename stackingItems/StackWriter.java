@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams the textual form of a stack, one item per line from base to
+ * top, as its type and its id: "cup 4\nlid 4\ncup 1\n". The ids are
+ * written digit by digit, so no String is created per item; a call only
+ * allocates the writer and, for a channel, one buffer.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class StackWriter implements ItemVisitor {
+    private static final int BUFFER = 8192;
+    private static final int MAX_LINE = 4 + 10 + 1;   // "cup ", the digits of an int, '\n'
+    private static final byte[] CUP_TEXT = {'c', 'u', 'p', ' '};
+    private static final byte[] LID_TEXT = {'l', 'i', 'd', ' '};
+
+    private final Appendable text;         // null when writing to a channel
+    private final WritableByteChannel channel;
+    private final ByteBuffer bytes;
+    private final byte[] digits = new byte[10];
+
+    /**
+     * Create a writer to characters or to bytes.
+     * @param text the characters, or null
+     * @param channel the bytes, or null
+     */
+    private StackWriter(Appendable text, WritableByteChannel channel) {
+        this.text = text;
+        this.channel = channel;
+        this.bytes = (channel == null) ? null : ByteBuffer.allocate(BUFFER);
+    }
+
+    /**
+     * Write a stack to characters.
+     * @param stack the store of the tower
+     * @param out where the text goes
+     * @throws IOException if out fails
+     */
+    public static void write(ItemStore stack, Appendable out) throws IOException {
+        StackWriter writer = new StackWriter(out, null);
+        try {
+            stack.forEach(writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write a stack as ASCII bytes.
+     * @param stack the store of the tower
+     * @param out where the bytes go
+     * @throws IOException if out fails
+     */
+    public static void write(ItemStore stack, WritableByteChannel out) throws IOException {
+        StackWriter writer = new StackWriter(null, out);
+        try {
+            stack.forEach(writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write the line of one item.
+     */
+    @Override
+    public void visit(int kind, int id, int base, int top) {
+        byte[] type = (kind == CUP) ? CUP_TEXT : LID_TEXT;
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + id % 10);
+            id /= 10;
+        } while (id > 0);
+        try {
+            if (text != null) {
+                text.append((kind == CUP) ? "cup " : "lid ");
+                while (count > 0) {
+                    text.append((char) digits[--count]);
+                }
+                text.append('\n');
+            } else {
+                if (bytes.remaining() < MAX_LINE) {
+                    flush();
+                }
+                bytes.put(type);
+                while (count > 0) {
+                    bytes.put(digits[--count]);
+                }
+                bytes.put((byte) '\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the channel.
+     * @throws IOException if the channel fails
+     */
+    private void flush() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
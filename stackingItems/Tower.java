@@ -1,6 +1,12 @@
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import javax.swing.JOptionPane;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.awt.Color;
 import static java.lang.Math.*;
 
@@ -15,27 +21,87 @@ import static java.lang.Math.*;
  * @version 3.0
  */
 public class Tower {
-    
+    // Delivers the errors of every tower, in order, away from the threads that run operations
+    private static final ExecutorService ERRORS = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "tower-errors");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private int width;
     private int maxHeight;
-    private int currentHeight;
     private boolean isOk;
-    private ArrayList<Item> stack;   // Created to store our stack
-    private TowerGUI towerGUI;       // GUI controller
+    private boolean inBatch;         // true while applyAll runs: no refresh, no errors delivered
+    private ItemStore stack;         // Created to store our stack
+    private StackView view;          // Live int view of the stack, created on first use
+    private TowerHistory history;    // Inverse of every change, for undo and redo
+    private TowerGUI towerGUI;       // GUI controller (null when headless)
+    private volatile TowerErrorListener errorListener;   // receives failures, may be null
 
     /**
      * Create a new Tower with the given dimensions.
-     * @param width the logical width of the tower (max cup diameter that fits)
+     * @param width the logical width of the tower, which scales the drawing
      * @param maxHeight the maximum stacking height in cm
      */
     public Tower(int width, int maxHeight) {
+        this(width, maxHeight, new ArrayItemStore(), false);
+        makeVisible();
+    }
+
+    /**
+     * Create a new Tower with the given dimensions and storage engine.
+     * @param width the logical width of the tower, which scales the drawing
+     * @param maxHeight the maximum stacking height in cm
+     * @param store an empty store, e.g. a TreeItemStore for O(log n) removal anywhere
+     */
+    public Tower(int width, int maxHeight, ItemStore store) {
+        this(width, maxHeight, store, false);
+        makeVisible();
+    }
+
+    /**
+     * Create a headless Tower with the given dimensions.
+     * A headless tower has no TowerGUI at all, so it never touches Swing or
+     * the Canvas singleton and works under java.awt.headless=true.
+     * No error dialog or toast is ever shown: errors are reported through
+     * ok(), and to the listener given to setErrorListener, if any.
+     * @param width the logical width of the tower, which scales the drawing
+     * @param maxHeight the maximum stacking height in cm
+     * @return a new tower that is never drawn
+     */
+    public static Tower headless(int width, int maxHeight) {
+        return new Tower(width, maxHeight, new ArrayItemStore(), true);
+    }
+
+    /**
+     * Create a headless Tower with the given dimensions and storage engine.
+     * Errors are reported as in headless(int, int).
+     * @param width the logical width of the tower, which scales the drawing
+     * @param maxHeight the maximum stacking height in cm
+     * @param store an empty store, e.g. a TreeItemStore for O(log n) removal anywhere
+     * @return a new tower that is never drawn
+     */
+    public static Tower headless(int width, int maxHeight, ItemStore store) {
+        return new Tower(width, maxHeight, store, true);
+    }
+
+    /**
+     * Shared constructor for visible and headless towers.
+     * @param width the logical width of the tower
+     * @param maxHeight the maximum stacking height in cm
+     * @param store the storage engine of the stack
+     * @param headless true to build the tower without any GUI
+     */
+    private Tower(int width, int maxHeight, ItemStore store, boolean headless) {
         this.width = width;
         this.maxHeight = maxHeight;
-        this.currentHeight = 0;
         this.isOk = true;
-        this.stack = new ArrayList<Item>();
-        this.towerGUI = new TowerGUI(this);
-        makeVisible();
+        this.stack = store;
+        this.history = new TowerHistory();
+        if (!headless) {
+            this.towerGUI = new TowerGUI(this);
+            this.errorListener = towerGUI::showError;
+        }
     }
 
     /**
@@ -52,42 +118,45 @@ public class Tower {
      * @param i the unique id of the cup to create and push 
      */
     public void pushCup(int i) {        
-        if (i <= 0) {
-            isOk = false;
-            showError("El id de la taza debe ser positivo.");
-            return;
-        }
-        if (findCup(i) != null) {
-            isOk = false;
-            showError("Ya existe una taza con id " + i + ".");
-            return;
-        }
-        
-        int cupHeight = (2 * i) - 1;
-        int[] validateTopAndBaseItemPosition = topAndBaseItemPosition(i, cupHeight, stack);
-        int itemTopPosition = validateTopAndBaseItemPosition[0];
-        int itemBasePosition = validateTopAndBaseItemPosition[1];
-        
-        if (itemTopPosition > maxHeight) {
-            isOk = false;
-            showError("La taza " + i + " no cabe en la altura de la torre.");
-            return;
-        }  
-        
-        createCup(i, itemBasePosition);
-        isOk = true;
-        
-        if (towerGUI.isVisible()) {
-            towerGUI.refresh();
+        long start = TowerMetrics.start();
+        TowerEvents.Push event = new TowerEvents.Push();
+        event.begin();
+        try {
+            if (i <= 0) {
+                fail(TowerError.Code.NON_POSITIVE_ID, "pushCup", i,
+                     "El id de la taza debe ser positivo.");
+                return;
+            }
+            if (findCup(i) != null) {
+                fail(TowerError.Code.DUPLICATE_ID, "pushCup", i,
+                     "Ya existe una taza con id " + i + ".");
+                return;
+            }
+
+            int cupHeight = (2 * i) - 1;
+            int itemTopPosition = basePositionOver(topItem(), i) + cupHeight;
+
+            if (itemTopPosition > maxHeight) {
+                fail(TowerError.Code.OVERFLOW, "pushCup", i,
+                     "La taza " + i + " no cabe en la altura de la torre.");
+                return;
+            }  
+
+            createCup(i);
+            isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.PUSH_CUP, start);
+            commitEvent(event, i, "cup");
         }
     }
 
     /**
      * Auxiliary method for pushCup operation
      * @param i the unique id, given to see if the cup can create
-     * @param itemBasePosition the y position when Item starts 
      */
-    private void createCup(int i, int itemBasePosition){
+    private void createCup(int i){
         Color color;   // Our can use the random method of the Canvas class
         Lid lidItem = findLid(i);
         if (lidItem != null) {
@@ -97,9 +166,8 @@ public class Tower {
         }
         
         Cup cup = new Cup(i, color);
-        cup.setBasePosition(itemBasePosition);
         stack.add(cup);
-        recalculatedStackPositions(stack);
+        history.recordAdd(stack.size() - 1, cup);
     }
     
     /**
@@ -119,42 +187,45 @@ public class Tower {
      * @param i the unique id of the lid to create and push
      */
     public void pushLid(int i) {
-        if (i <= 0) {
-            isOk = false;
-            showError("El id de la tapa debe ser positivo.");
-            return;
-        }
-        if (findLid(i) != null) {
-            isOk = false;
-            showError("Ya existe una tapa con id " + i + ".");
-            return;
-        }
-        
-        int lidHeight = Item.thick;
-        int[] validateTopAndBaseItemPosition = topAndBaseItemPosition(i, lidHeight, stack);
-        int itemTopPosition = validateTopAndBaseItemPosition[0];
-        int itemBasePosition = validateTopAndBaseItemPosition[1];
-        
-        if (itemTopPosition > maxHeight) {
-            isOk = false;
-            showError("La tapa " + i + " no cabe en la altura de la torre.");
-            return;
-        }
-        
-        createLid(i, itemBasePosition);
-        isOk = true;
-        
-        if (towerGUI.isVisible()) {
-            towerGUI.refresh();
+        long start = TowerMetrics.start();
+        TowerEvents.Push event = new TowerEvents.Push();
+        event.begin();
+        try {
+            if (i <= 0) {
+                fail(TowerError.Code.NON_POSITIVE_ID, "pushLid", i,
+                     "El id de la tapa debe ser positivo.");
+                return;
+            }
+            if (findLid(i) != null) {
+                fail(TowerError.Code.DUPLICATE_ID, "pushLid", i,
+                     "Ya existe una tapa con id " + i + ".");
+                return;
+            }
+
+            int lidHeight = Item.thick;
+            int itemTopPosition = basePositionOver(topItem(), i) + lidHeight;
+
+            if (itemTopPosition > maxHeight) {
+                fail(TowerError.Code.OVERFLOW, "pushLid", i,
+                     "La tapa " + i + " no cabe en la altura de la torre.");
+                return;
+            }
+
+            createLid(i);
+            isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.PUSH_LID, start);
+            commitEvent(event, i, "lid");
         }
     }
 
     /**
      * Auxiliary method for pushLid operation
      * @param i the unique id, given to see if the lid can create
-     * @param itemBasePosition the y position when Item starts 
      */
-    private void createLid(int i, int itemBasePosition){
+    private void createLid(int i){
         Color color;
         Cup cupItem = findCup(i);
         if (cupItem != null) {
@@ -164,9 +235,8 @@ public class Tower {
         }
         
         Lid lid = new Lid(i, color);
-        lid.setBasePosition(itemBasePosition);
         stack.add(lid);
-        recalculatedStackPositions(stack);
+        history.recordAdd(stack.size() - 1, lid);
     }
     
     /**
@@ -175,22 +245,27 @@ public class Tower {
      * Changes its status (isOk = false) if no cup is found in the tower
      */
     public void popCup() {
-        for (int idx = stack.size() - 1; idx >= 0; idx--) {
-            Item item = stack.get(idx);
-            if (item.getType().equals("cup")) {
-        
-                stack.remove(idx);
-                recalculatedStackPositions(stack);   // We need to reconfigure the tower
-                isOk = true;
-                
-                if (towerGUI.isVisible()) {
-                    towerGUI.refresh();
+        long start = TowerMetrics.start();
+        TowerEvents.Pop event = new TowerEvents.Pop();
+        event.begin();
+        try {
+            for (int idx = stack.size() - 1; idx >= 0; idx--) {
+                Item item = stack.get(idx);
+                if (item instanceof Cup) {
+                    event.itemId = item.getId();
+                    stack.remove(item);   // The store reconfigures the items above
+                    history.recordRemove(idx, item);
+                    isOk = true;
+
+                    refreshGUI();
+                    return;
                 }
-                return;
             }
+            fail(TowerError.Code.NOT_FOUND, "popCup", 0, "No hay tazas en la torre.");
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.POP_CUP, start);
+            commitEvent(event, event.itemId, "cup");
         }
-        isOk = false;
-        showError("No hay tazas en la torre.");
     }
 
     /**
@@ -200,76 +275,87 @@ public class Tower {
      * Changes its status (isOk = false) if no lid is found in the tower
      */
     public void popLid() {
-        for (int idx = stack.size() - 1; idx >= 0; idx--) {
-            Item item = stack.get(idx);
-            if (item.getType().equals("lid")) {
-                
-                stack.remove(idx);
-                recalculatedStackPositions(stack);
-                isOk = true;
-                
-                if (towerGUI.isVisible()) {
-                    towerGUI.refresh();
+        long start = TowerMetrics.start();
+        TowerEvents.Pop event = new TowerEvents.Pop();
+        event.begin();
+        try {
+            for (int idx = stack.size() - 1; idx >= 0; idx--) {
+                Item item = stack.get(idx);
+                if (item instanceof Lid) {
+                    event.itemId = item.getId();
+                    stack.remove(item);
+                    history.recordRemove(idx, item);
+                    isOk = true;
+
+                    refreshGUI();
+                    return;
                 }
-                return;
             }
+            fail(TowerError.Code.NOT_FOUND, "popLid", 0, "No hay tapas en la torre.");
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.POP_LID, start);
+            commitEvent(event, event.itemId, "lid");
         }
-        isOk = false;
-        showError("No hay tapas en la torre.");
     }
 
     /**
      * Remove a cup with the given id from the tower.
-     * Searches through all stack (base to top) to find the matching cup.
+     * The cup is found through the id index of the store, without scanning the stack.
      * 
      * Changes its status (isOk = false) if no cup with the given id is found.</p>
      * 
      * @param i the id of the cup to remove
      */
     public void removeCup(int i) {
-        for (int idx = 0; idx < stack.size(); idx++) {
-            Item item = stack.get(idx);
-            if (item.getType().equals("cup") && item.getId() == i) {
-                
-                stack.remove(idx);
-                recalculatedStackPositions(stack);
-                isOk = true;
-                
-                if (towerGUI.isVisible()) {
-                    towerGUI.refresh();
-                }
+        long start = TowerMetrics.start();
+        TowerEvents.Remove event = new TowerEvents.Remove();
+        event.begin();
+        try {
+            Cup cup = findCup(i);
+            if (cup == null) {
+                fail(TowerError.Code.NOT_FOUND, "removeCup", i,
+                     "No se encontró la taza con id " + i + ".");
                 return;
             }
+            history.recordRemove(stack.indexOf(cup), cup);
+            stack.remove(cup);
+            isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.REMOVE_CUP, start);
+            commitEvent(event, i, "cup");
         }
-        isOk = false;
-        showError("No se encontró la taza con id " + i + ".");
     }
 
     /**
      * Remove a lid with the given id from the tower.
-     * Searches through all stack (base to top) to find the matching lid.
+     * The lid is found through the id index of the store, without scanning the stack.
      * 
      * Changes its status (isOk = false) if no lid with the given id is found.</p>
      * 
      * @param i the id of the lid to remove
      */
     public void removeLid(int i) {
-        for (int idx = 0; idx < stack.size(); idx++) {
-            Item item = stack.get(idx);
-            if (item.getType().equals("lid") && item.getId() == i) {
-                
-                stack.remove(idx);
-                recalculatedStackPositions(stack);
-                isOk = true;
-                
-                if (towerGUI.isVisible()) {
-                    towerGUI.refresh();
-                }
+        long start = TowerMetrics.start();
+        TowerEvents.Remove event = new TowerEvents.Remove();
+        event.begin();
+        try {
+            Lid lid = findLid(i);
+            if (lid == null) {
+                fail(TowerError.Code.NOT_FOUND, "removeLid", i,
+                     "No se encontró la tapa con id " + i + ".");
                 return;
             }
+            history.recordRemove(stack.indexOf(lid), lid);
+            stack.remove(lid);
+            isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.REMOVE_LID, start);
+            commitEvent(event, i, "lid");
         }
-        isOk = false;
-        showError("No se encontró la tapa con id " + i + ".");
     }
 
     /**
@@ -280,12 +366,22 @@ public class Tower {
      * would cause overflow are excluded.
      */
     public void orderTower() {
-        ArrayList<Item> cups = new ArrayList<Item>();
-        ArrayList<Item> lids = new ArrayList<Item>();
-        separateCupsAndLids(cups, lids);
-        sortByIdDescending(cups);
-        sortByIdDescending(lids);
-        rebuildTower(cups, lids);
+        long start = TowerMetrics.start();
+        TowerEvents.Reorder event = new TowerEvents.Reorder();
+        event.begin();
+        int sizeBefore = stack.size();
+        try {
+            ArrayList<Item> current = stack.asList();
+            ArrayList<Item> cups = new ArrayList<Item>(current.size());
+            ArrayList<Item> lids = new ArrayList<Item>();
+            separateCupsAndLids(current, cups, lids);
+            rebuildTower(current, sortById(cups, true), sortById(lids, true), true);
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.ORDER_TOWER, start);
+            event.largestFirst = true;
+            event.itemsDropped = sizeBefore - stack.size();
+            commitEvent(event);
+        }
     }
 
     /**
@@ -296,46 +392,172 @@ public class Tower {
      * would cause overflow are excluded.
      */
     public void reverseTower() {
-        ArrayList<Item> cups = new ArrayList<Item>();
-        ArrayList<Item> lids = new ArrayList<Item>();
-        separateCupsAndLids(cups, lids);
-        sortByIdAscending(cups);
-        sortByIdAscending(lids);
-        rebuildTower(cups, lids);
+        long start = TowerMetrics.start();
+        TowerEvents.Reorder event = new TowerEvents.Reorder();
+        event.begin();
+        int sizeBefore = stack.size();
+        try {
+            ArrayList<Item> current = stack.asList();
+            ArrayList<Item> cups = new ArrayList<Item>(current.size());
+            ArrayList<Item> lids = new ArrayList<Item>();
+            separateCupsAndLids(current, cups, lids);
+            rebuildTower(current, sortById(cups, false), sortById(lids, false), false);
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.REVERSE_TOWER, start);
+            event.largestFirst = false;
+            event.itemsDropped = sizeBefore - stack.size();
+            commitEvent(event);
+        }
+    }
+
+    /**
+     * Undo the last change of the tower (a push, pop, remove, order or reverse).
+     * Undoing a push, pop or remove costs what the change cost. Undoing an
+     * order or a reverse reloads the whole stack, in O(n).
+     * Changes its status (isOk = false) if there is nothing to undo.
+     */
+    public void undo() {
+        long start = TowerMetrics.start();
+        try {
+            if (!history.undo(stack)) {
+                fail(TowerError.Code.NO_HISTORY, "undo", 0, "No hay cambios para deshacer.");
+                return;
+            }
+            isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.UNDO, start);
+        }
+    }
+
+    /**
+     * Redo the last undone change of the tower.
+     * Any new change after an undo drops the changes that could be redone.
+     * Changes its status (isOk = false) if there is nothing to redo.
+     */
+    public void redo() {
+        long start = TowerMetrics.start();
+        try {
+            if (!history.redo(stack)) {
+                fail(TowerError.Code.NO_HISTORY, "redo", 0, "No hay cambios para rehacer.");
+                return;
+            }
+            isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.REDO, start);
+        }
+    }
+
+    /**
+     * Append every change of the tower from now on to a durable log.
+     * Undo and redo are logged as the changes they make.
+     * @param log the log, or null to stop logging
+     */
+    public void setLog(TowerLog log) {
+        history.setLog(log);
+    }
+
+    /**
+     * Choose who receives the errors of the tower. A tower with a GUI
+     * starts with one that shows them as a toast; a headless tower starts
+     * with none, so until one is set its errors are only seen through ok().
+     * @param listener the listener, or null to drop the errors
+     */
+    public void setErrorListener(TowerErrorListener listener) {
+        this.errorListener = listener;
+    }
+
+    /**
+     * Apply many operations as a single batch.
+     * Each operation is validated and applied in order exactly like the
+     * matching method, but the GUI is refreshed at most once at the end and
+     * no error dialog is shown. With an ArrayItemStore, removals only mark
+     * positions as stale, so a run of them, in any order, costs one
+     * position pass; a push or a pop brings the positions up to date first.
+     * 
+     * After the batch, ok() is true only if every operation succeeded.
+     * 
+     * @param ops the operations, applied from first to last
+     * @return the success of each operation, in the same order as ops
+     */
+    public boolean[] applyAll(List<TowerOp> ops) {
+        long start = TowerMetrics.start();
+        try {
+            boolean[] results = new boolean[ops.size()];
+            boolean allOk = true;
+            inBatch = true;
+            try {
+                for (int k = 0; k < results.length; k++) {
+                    apply(ops.get(k));
+                    results[k] = isOk;
+                    allOk &= isOk;
+                }
+            } finally {
+                inBatch = false;
+            }
+            isOk = allOk;
+            refreshGUI();
+            return results;
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.APPLY_ALL, start);
+        }
+    }
+
+    /**
+     * Take an immutable snapshot of the tower.
+     * With a TreeItemStore it costs O(1): the snapshot shares every node
+     * with the tower. With the default ArrayItemStore it costs O(n): every
+     * item is copied into the snapshot.
+     * @return a read-only view of the tower as it is now
+     */
+    public TowerSnapshot snapshot() {
+        return new TowerSnapshot(fork());
+    }
+
+    /**
+     * Create a headless branch of the tower for what-if analysis.
+     * The branch starts with the same items and can be changed freely;
+     * neither tower sees the changes of the other one. With a TreeItemStore
+     * it costs O(1), because both share structure until they change it, and
+     * the branch copies a shared item the first time it hands it out. With
+     * the default ArrayItemStore it costs O(n): every item is copied.
+     * @return a new headless tower with the same width, maxHeight and stack
+     */
+    public Tower fork() {
+        return new Tower(width, maxHeight, stack.fork(), true);
     }
 
     /**
      * Get the current total height of all stacked stack in the tower.
+     * It is the running maximum top kept by the store, so no rescan is needed.
      * @return the height in cm
      */
     public int height() {
-        return currentHeight;
+        long start = TowerMetrics.start();
+        try {
+            return stack.height();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.HEIGHT, start);
+        }
     }
 
     /**
      * Get the ids of cups that are covered by their matching lid.
      * A cup is considered "lided" when the item directly above it is a lid
-     * with the same id. Results are sorted from smallest to largest id.
-     * @return array of ids for all lided cups, sorted ascending
+     * with the same id. The store keeps the set of lided cups up to date
+     * on every change, so this costs O(k) in the number of lided cups.
+     * @return array of ids for all lided cups, from base to top
      */
     public int[] lidedCups() {
-        if (stack.isEmpty()) {
-            return new int[0];
-        }
-        ArrayList<Integer> result = new ArrayList<Integer>();
-        for (int idx = 0; idx < stack.size() - 1; idx++) {
-            Item current = stack.get(idx);
-            Item next = stack.get(idx + 1);
-            if (current.getType().equals("cup") && next.getType().equals("lid")
-                    && current.getId() == next.getId()) {
-                result.add(current.getId());
-            }
-        }
-        int[] arr = new int[result.size()];
-        for (int i = 0; i < result.size(); i++) {
-            arr[i] = result.get(i);
+        long start = TowerMetrics.start();
+        try {
+            return stack.lidedCups();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.LIDED_CUPS, start);
         }
-        return arr;
     }
 
     /**
@@ -345,39 +567,133 @@ public class Tower {
      * @return array of strings alternating type and id from base to top
      */
     public String[] stackingStack() {
-        ArrayList<String> result = new ArrayList<String>();
-        for (Item s : stack) {
-            result.add(s.getType());
-            result.add(String.valueOf(s.getId()));
+        long start = TowerMetrics.start();
+        try {
+            String[] result = new String[2 * stack.size()];
+            int[] next = {0};
+            stack.forEach((kind, id, base, top) -> {
+                result[next[0]++] = (kind == ItemVisitor.CUP) ? "cup" : "lid";
+                result[next[0]++] = String.valueOf(id);
+            });
+            return result;
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.STACKING_STACK, start);
+        }
+    }
+
+    /**
+     * Hand every item to a visitor, from base to top, with its kind, id,
+     * base and top. Unlike stackingStack() no String or array is created.
+     * @param visitor receives each item
+     */
+    public void forEach(ItemVisitor visitor) {
+        stack.forEach(visitor);
+    }
+
+    /**
+     * Get a live view of the stack as rows of ints (kind, id, base, top).
+     * The view follows the changes of the tower and is the same object on
+     * every call.
+     * @return the view of this tower
+     */
+    public StackView view() {
+        if (view == null) {
+            view = new StackView(stack);
         }
-        return result.toArray(new String[0]);
+        return view;
+    }
+
+    /**
+     * Write the stack as text, one item per line from base to top:
+     * "cup 4\nlid 4\ncup 1\n". Same content as stackingStack(), without
+     * creating a String per item.
+     * @param out where the text goes
+     * @throws IOException if out fails
+     */
+    public void writeStack(Appendable out) throws IOException {
+        StackWriter.write(stack, out);
+    }
+
+    /**
+     * Write the stack as ASCII text to a channel, in the format of
+     * writeStack(Appendable). The bytes go through a single buffer.
+     * @param out where the bytes go
+     * @throws IOException if out fails
+     */
+    public void writeStack(WritableByteChannel out) throws IOException {
+        StackWriter.write(stack, out);
     }
 
     /**
      * Make the tower visible on the canvas.
      * First ensures the Canvas singleton exists, then checks if the tower
-     * fits on screen. If it does not fit, shows a JOptionPane error and
-     * does not make the tower visible.
+     * fits on screen. If it does not fit, reports DOES_NOT_FIT_SCREEN and
+     * does not make the tower visible. A headless tower is never shown,
+     * this only sets ok() to false.
      */
     public void makeVisible() {
+        if (towerGUI == null) {
+            isOk = false;   // A headless tower can never be shown
+            return;
+        }
         Canvas.getCanvas();
         if (!towerGUI.fitsOnScreen()) {
-            isOk = false;
-            JOptionPane.showMessageDialog(null,
-                "La torre no cabe en la pantalla. No se puede hacer visible.",
-                "Error", JOptionPane.ERROR_MESSAGE);
+            fail(TowerError.Code.DOES_NOT_FIT_SCREEN, "makeVisible", 0,
+                 "La torre no cabe en la pantalla. No se puede hacer visible.");
             return;
         }
         towerGUI.setVisible(true);
         isOk = true;
     }
 
+    /**
+     * Zoom in the view of the tower, doubling the pixels per cm.
+     * Does nothing but set ok() to false on a headless tower.
+     */
+    public void zoomIn() {
+        if (towerGUI == null) {
+            isOk = false;
+            return;
+        }
+        towerGUI.zoomIn();
+        isOk = true;
+    }
+
+    /**
+     * Zoom out the view of the tower, halving the pixels per cm.
+     * Does nothing but set ok() to false on a headless tower.
+     */
+    public void zoomOut() {
+        if (towerGUI == null) {
+            isOk = false;
+            return;
+        }
+        towerGUI.zoomOut();
+        isOk = true;
+    }
+
+    /**
+     * Move the view of the tower up or down.
+     * Does nothing but set ok() to false on a headless tower.
+     * @param cm how many cm to move the view (positive is up)
+     */
+    public void scroll(int cm) {
+        if (towerGUI == null) {
+            isOk = false;
+            return;
+        }
+        towerGUI.scroll(cm);
+        isOk = true;
+    }
+
     /**
      * Make the tower invisible. Erases all visual elements from the canvas
      * but keeps the tower data intact.
      */
     public void makeInvisible() {
-        towerGUI.setVisible(false);
+        if (towerGUI != null) {
+            towerGUI.setVisible(false);
+        }
         isOk = true;
     }
 
@@ -386,7 +702,9 @@ public class Tower {
      * visibility to false.
      */
     public void exit() {
-        towerGUI.erase();
+        if (towerGUI != null) {
+            towerGUI.erase();
+        }
         isOk = true;
     }
 
@@ -398,9 +716,17 @@ public class Tower {
         return isOk;
     }
 
+    /**
+     * Check if this tower was created without a GUI.
+     * @return true if the tower is headless
+     */
+    public boolean isHeadless() {
+        return towerGUI == null;
+    }
+
     /**
      * Get the logical width of the tower.
-     * @return the width (maximum cup diameter that fits)
+     * @return the width, which scales the drawing
      */
     public int getWidth() {
         return width;
@@ -416,67 +742,108 @@ public class Tower {
 
     /**
      * Get the list of stacked stack from base to top.
-     * Used internally by TowerGUI for drawing.
-     * @return the ArrayList of Stackstack
+     * The list is read-only and live with every store: it reads the store
+     * on each call, so it always shows the current stack, and an item gets
+     * its position brought up to date when it is read. Reading an item
+     * costs O(1) with the default ArrayItemStore and O(log n) with a
+     * TreeItemStore. Use view() or forEach() to read ids and positions
+     * without touching the items.
+     * @return the items from base to top
      */
-    public ArrayList<Item> getStack() {
-        return stack;
-    }
+    public List<Item> getStack() {
+        return new AbstractList<Item>() {
+            @Override
+            public Item get(int index) {
+                return stack.get(index);
+            }
 
-    // ---- Private helper methods ----
+            @Override
+            public int size() {
+                return stack.size();
+            }
+        };
+    }
 
     /**
-     * Find a cup StackItem by its id.
-     * @param id the id to search for
-     * @return the matching StackItem wrapping a Cup, or null if not found
+     * Get the items that cross a band of heights, from base to top.
+     * Two binary searches on the store bound the candidates, so the cost
+     * depends on the items in the band and not on the size of the tower.
+     * Used by TowerGUI to draw only what the viewport shows.
+     * @param bottom lowest height of the band in cm
+     * @param top highest height of the band in cm (exclusive)
+     * @return the items with some part between bottom and top
      */
-    private Cup findCup(int id) {
-        for (Item s : stack) {
-            if (s.getType().equals("cup") && s.getId() == id) {
-                return (Cup) s;
+    public ArrayList<Item> itemsBetween(int bottom, int top) {
+        ArrayList<Item> items = new ArrayList<Item>();
+        int from = stack.firstReaching(bottom);
+        int to = stack.firstStartingAt(top);
+        for (int idx = from; idx < to; idx++) {
+            Item item = stack.get(idx);
+            if (item.getTopPosition() > bottom) {   // nested items may end below the band
+                items.add(item);
             }
         }
-        return null;
+        return items;
+    }
+
+    /**
+     * Replace the whole stack, e.g. when a log is replayed. The items are
+     * trusted: they are not checked against maxHeight. The undo history
+     * is emptied.
+     * @param items the new items from base to top (ids must be unique per kind)
+     */
+    void restore(ArrayList<Item> items) {
+        stack.load(items);
+        history.recordReset(items);
+        isOk = true;
+        
+        refreshGUI();
     }
 
     /**
-     * Find a lid StackItem by its id.
+     * Reorder a list of items as orderTower or reverseTower would, without
+     * touching the stack, e.g. when a log is replayed.
+     * @param items the items from base to top
+     * @param largestFirst true for an order, false for a reverse
+     * @return the items that fit within maxHeight, in their new order
+     */
+    ArrayList<Item> reordered(ArrayList<Item> items, boolean largestFirst) {
+        ArrayList<Item> cups = new ArrayList<Item>(items.size());
+        ArrayList<Item> lids = new ArrayList<Item>();
+        separateCupsAndLids(items, cups, lids);
+        return arrange(sortById(cups, largestFirst), sortById(lids, largestFirst), largestFirst);
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Find a cup by its id through the id index of the store.
      * @param id the id to search for
-     * @return the matching StackItem wrapping a Lid, or null if not found
+     * @return the matching Cup, or null if not found
      */
-    private Lid findLid(int id) {
-        for (Item s : stack) {
-            if (s.getType().equals("lid") && s.getId() == id) {
-                return (Lid) s;
-            }
-        }
-        return null;
+    private Cup findCup(int id) {
+        return stack.findCup(id);
     }
 
     /**
-     * Find a lid StackItem in a specific list by its id.
-     * @param lids the list of lid Stackstack to search
+     * Find a lid by its id through the id index of the store.
      * @param id the id to search for
-     * @return the matching StackItem, or null if not found
+     * @return the matching Lid, or null if not found
      */
-    private Lid findLidInList(ArrayList<Item> lids, int id) {
-        for (Item s : lids) {
-            if (s.getId() == id) {
-                return (Lid) s;
-            }
-        }
-        return null;
+    private Lid findLid(int id) {
+        return stack.findLid(id);
     }
 
     /**
      * Separate the current stack into cups and lids lists.
+     * @param current the items of the stack, from base to top
      * @param cups output list that will receive all cup Stackstack
      * @param lids output list that will receive all lid Stackstack
      */
-    private void separateCupsAndLids(ArrayList<Item> cups,
+    private void separateCupsAndLids(ArrayList<Item> current, ArrayList<Item> cups,
                                      ArrayList<Item> lids) {
-        for (Item s : stack) {
-            if (s.getType().equals("cup")) {
+        for (Item s : current) {
+            if (s instanceof Cup) {
                 cups.add(s);
             } else {
                 lids.add(s);
@@ -485,141 +852,292 @@ public class Tower {
     }
 
     /**
-     * Rebuild the tower from sorted cups and lids lists.
+     * Rebuild the tower from sorted cups and lids arrays.
      * Places cups in order, inserting matching lids directly on top.
      * Remaining unmatched lids are appended at the top.
      * 
-     * @param cups sorted list of cup Stackstack
-     * @param lids sorted list of lid Stackstack
+     * @param current the items of the stack before the rebuild, from base to top
+     * @param cups sorted array of cups
+     * @param lids sorted array of lids, in the same order as cups
+     * @param largestFirst true if both arrays go from largest to smallest id
      */
-    private void rebuildTower(ArrayList<Item> cups, ArrayList<Item> lids) {
-        ArrayList<Item> ordered = new ArrayList<Item>();
-    
-        addCupsAndMatchingLids(cups, lids, ordered);
-        addAnyRemainingLids(lids, ordered);
-        
-        this.stack = ordered;
-        recalculatedStackPositions(this.stack);
-        this.isOk = true;
-    
-        if (towerGUI.isVisible()) {
-            towerGUI.refresh();
+    private void rebuildTower(ArrayList<Item> current, Item[] cups, Item[] lids,
+                              boolean largestFirst) {
+        long start = TowerMetrics.start();
+        try {
+            ArrayList<Item> ordered = arrange(cups, lids, largestFirst);
+            history.recordReorder(current, ordered, largestFirst);   // Stack indexes are still the old ones
+            stack.load(ordered);   // Also refills the id indexes
+            this.isOk = true;
+
+            refreshGUI();
+        } finally {
+            TowerMetrics.stop(TowerMetrics.Operation.REBUILD_TOWER, start);
         }
     }
+    
     /**
-     * Auxiliary rebuildTower method to reconstruction cups those have own lids
-     * @param cups The list of the cups (ordered)
-     * @param lids The list of the lids (ordered)
+     * Put sorted cups and lids in their new order, each lid on its cup and
+     * the lids without a cup at the top, leaving out the items that do not fit.
+     * @param cups sorted array of cups
+     * @param lids sorted array of lids, in the same order as cups
+     * @param largestFirst true if both arrays go from largest to smallest id
+     * @return the items that fit, from base to top, with their base positions set
+     */
+    private ArrayList<Item> arrange(Item[] cups, Item[] lids, boolean largestFirst) {
+        ArrayList<Item> ordered = new ArrayList<Item>(cups.length + lids.length);
+        ArrayList<Item> remainingLids = new ArrayList<Item>();
+
+        addCupsAndMatchingLids(cups, lids, largestFirst, ordered, remainingLids);
+        addAnyRemainingLids(remainingLids, ordered);
+        return ordered;
+    }
+
+    /**
+     * Auxiliary rebuildTower method to reconstruction cups those have own lids.
+     * Both arrays are sorted the same way, so they are walked together in one pass:
+     * lids that come before the current cup have no cup and are left for the top.
+     * 
+     * @param cups The array of the cups (ordered)
+     * @param lids The array of the lids (ordered)
+     * @param largestFirst true if the arrays go from largest to smallest id
      * @param ordered The parent list where we will organize cup and lid lists.
+     * @param remainingLids receives the lids that were not placed on their cup, in order
      */
-    private void addCupsAndMatchingLids(ArrayList<Item> cups,ArrayList<Item> lids, ArrayList<Item> ordered){
-        int[] metrics;
+    private void addCupsAndMatchingLids(Item[] cups, Item[] lids, boolean largestFirst,
+                                        ArrayList<Item> ordered, ArrayList<Item> remainingLids){
+        int nextLid = 0;
         for (Item cup : cups) {
-            metrics = topAndBaseItemPosition(cup.getId(), cup.getHeight(), ordered);
-            if (metrics[0] <= maxHeight) { 
-                
-                ordered.add(cup);
-                recalculatedStackPositions(ordered);
-    
-                Item matchingLid = findLidInList(lids, cup.getId());
-                if (matchingLid != null) {
-                    metrics = topAndBaseItemPosition(matchingLid.getId(), matchingLid.getHeight(), ordered);
-                    
-                    if (metrics[0] <= maxHeight) {
-                        ordered.add(matchingLid);
-                        recalculatedStackPositions(ordered);
-                        lids.remove(matchingLid); // Remove so it's not added again later
-                    }
+            int id = cup.getId();
+            while (nextLid < lids.length
+                   && (largestFirst ? lids[nextLid].getId() > id : lids[nextLid].getId() < id)) {
+                remainingLids.add(lids[nextLid]);
+                nextLid++;
+            }
+            boolean cupPlaced = placeIfFits(cup, ordered);
+            
+            if (nextLid < lids.length && lids[nextLid].getId() == id) {
+                Item matchingLid = lids[nextLid];
+                nextLid++;
+                if (!cupPlaced || !placeIfFits(matchingLid, ordered)) {
+                    remainingLids.add(matchingLid);
                 }
             }
         }
+        while (nextLid < lids.length) {
+            remainingLids.add(lids[nextLid]);
+            nextLid++;
+        }
     }
+    
     /**
      * Auxiliary rebuildTower method to reconstruction for lids that don't have cups
      * @param lids The list of the lids (ordered)
      * @param ordered The parent list where we will organize cup and lid lists.
      */
     private void addAnyRemainingLids(ArrayList<Item> lids, ArrayList<Item> ordered){
-        int[] metrics;
         for (Item lid : lids) {
-            metrics = topAndBaseItemPosition(lid.getId(), lid.getHeight(), ordered);
-            if (metrics[0] <= maxHeight) {
-                ordered.add(lid);
-                recalculatedStackPositions(ordered);
-            }
+            placeIfFits(lid, ordered);
         }
     }
+    
+    /**
+     * Put an item on top of a list being rebuilt if it fits within maxHeight.
+     * Only the last item of the list is needed, so overflow is decided in O(1).
+     * 
+     * @param item the item to place
+     * @param ordered the list being rebuilt, with base positions already set
+     * @return true if the item was placed, false if it would cause overflow
+     */
+    private boolean placeIfFits(Item item, ArrayList<Item> ordered){
+        int[] metrics = topAndBaseItemPosition(item.getId(), item.getHeight(), ordered);
+        if (metrics[0] > maxHeight) {
+            return false;
+        }
+        item.setBasePosition(metrics[1]);
+        ordered.add(item);
+        return true;
+    }
 
     /**
-     * Sort a list of Stackstack by id in descending order (largest first).
-     * Uses selection sort for simplicity.
-     * @param list the list to sort in place
+     * Sort a list of items by id with an LSD radix sort on bytes, in O(n).
+     * Passes over bytes that are zero in every id are skipped, so small ids
+     * cost a single counting sort pass.
+     * 
+     * @param list the items to sort
+     * @param largestFirst true for descending order, false for ascending
+     * @return a new array with the sorted items
      */
-    private void sortByIdDescending(ArrayList<Item> list) {
-        for (int i = 0; i < list.size() - 1; i++) {
-            for (int j = i + 1; j < list.size(); j++) {
-                if (list.get(i).getId() < list.get(j).getId()) {
-                    Item temp = list.get(i);
-                    list.set(i, list.get(j));
-                    list.set(j, temp);
-                }
+    private Item[] sortById(ArrayList<Item> list, boolean largestFirst) {
+        int n = list.size();
+        Item[] sorted = list.toArray(new Item[n]);
+        Item[] buffer = new Item[n];
+        int maxId = 0;
+        for (Item item : sorted) {
+            maxId = max(maxId, item.getId());
+        }
+        int[] count = new int[257];
+        for (int shift = 0; shift < 32 && (maxId >>> shift) != 0; shift += 8) {
+            Arrays.fill(count, 0);
+            for (Item item : sorted) {
+                count[((item.getId() >>> shift) & 0xFF) + 1]++;
+            }
+            for (int digit = 0; digit < 256; digit++) {
+                count[digit + 1] += count[digit];
+            }
+            for (Item item : sorted) {
+                buffer[count[(item.getId() >>> shift) & 0xFF]++] = item;
+            }
+            Item[] swap = sorted;
+            sorted = buffer;
+            buffer = swap;
+        }
+        if (largestFirst) {
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                Item swap = sorted[i];
+                sorted[i] = sorted[j];
+                sorted[j] = swap;
             }
         }
+        return sorted;
     }
 
     /**
-     * Sort a list of Stackstack by id in ascending order (smallest first).
-     * Uses selection sort for simplicity.
-     * @param list the list to sort in place
+     * Auxiliary applyAll method to call the method that matches an operation.
+     * @param op the operation to apply
      */
-    private void sortByIdAscending(ArrayList<Item> list) {
-        for (int i = 0; i < list.size() - 1; i++) {
-            for (int j = i + 1; j < list.size(); j++) {
-                if (list.get(i).getId() > list.get(j).getId()) {
-                    Item temp = list.get(i);
-                    list.set(i, list.get(j));
-                    list.set(j, temp);
-                }
-            }
+    private void apply(TowerOp op) {
+        switch (op.getKind()) {
+            case PUSH_CUP:
+                pushCup(op.getId());
+                break;
+            case PUSH_LID:
+                pushLid(op.getId());
+                break;
+            case POP_CUP:
+                popCup();
+                break;
+            case POP_LID:
+                popLid();
+                break;
+            case REMOVE_CUP:
+                removeCup(op.getId());
+                break;
+            case REMOVE_LID:
+                removeLid(op.getId());
+                break;
+            case ORDER:
+                orderTower();
+                break;
+            default:
+                reverseTower();
         }
     }
 
     /**
-     * Show an error message using JOptionPane, but only if the tower is visible.
-     * When invisible, errors are silent (only isOk is set to false).
-     * @param message the error message to display
+     * Fill in and commit the event of a change to one item, if it is being recorded.
+     * @param event the event begun when the change started
+     * @param id the id of the item
+     * @param type "cup" or "lid"
      */
-    private void showError(String message) {
-        if (towerGUI.isVisible()) {
-            JOptionPane.showMessageDialog(null, message,
-                "Error", JOptionPane.ERROR_MESSAGE);
+    private void commitEvent(TowerEvents.ItemChange event, int id, String type) {
+        if (event.shouldCommit()) {
+            event.itemId = id;
+            event.itemType = type;
+            commitEvent(event);
         }
     }
+
+    /**
+     * Fill in and commit the event of a change, if it is being recorded.
+     * @param event the event begun when the change started
+     */
+    private void commitEvent(TowerEvents.Change event) {
+        if (event.shouldCommit()) {
+            event.stackSize = stack.size();
+            event.height = stack.height();
+            event.ok = isOk;
+            event.commit();
+        }
+    }
+
+    /**
+     * Redraw the tower, but only if it has a GUI and it is visible.
+     * Does nothing during a batch; applyAll refreshes once at the end.
+     */
+    private void refreshGUI() {
+        if (!inBatch && towerGUI != null && towerGUI.isVisible()) {
+            towerGUI.refresh();
+        }
+    }
+
+    /**
+     * Mark the last operation as failed and hand the error to the listener,
+     * if there is one, on the error thread. Never waits for the listener.
+     * In a batch the error is not delivered; applyAll reports each result.
+     * @param code why the operation failed
+     * @param operation the name of the method that failed
+     * @param id the id given to the operation, 0 if it takes none
+     * @param message a description for the user
+     */
+    private void fail(TowerError.Code code, String operation, int id, String message) {
+        isOk = false;
+        TowerErrorListener listener = errorListener;
+        if (!inBatch && listener != null) {
+            TowerError error = new TowerError(code, operation, id, message);
+            ERRORS.execute(() -> listener.towerError(error));
+        }
+    }
+    
+    /**
+     * Get the item on the top of the stack.
+     * @return the top item, or null if the tower is empty
+     */
+    private Item topItem(){
+        int size = stack.size();
+        return (size == 0) ? null : stack.get(size - 1);
+    }
+    
+    /**
+     * Nesting rule of the tower: an item with a smaller id than the item below
+     * goes inside it (only the thick of the cup is added), otherwise it sits
+     * on top of it.
+     * 
+     * @param below the item directly below
+     * @param id the id of the item that goes over it
+     * @return the distance from the base of below to the base of the item
+     */
+    static int nestingOffset(Item below, int id){
+        return nestingOffset(below.getId(), below.getHeight(), id);
+    }
     
     /**
-     * This method works to currentHeight update and recalculate stack positions to have
-     * a correct Y position about each item.
+     * Nesting rule of the tower on plain values, shared with TowerSolver.
      * 
-     * Its functionality is based in choose what is the biggest top height in some item,
-     * and this answer corresponds to the currentHeight.
+     * @param belowId the id of the item directly below
+     * @param belowHeight the height of the item directly below
+     * @param id the id of the item that goes over it
+     * @return the distance from the base of below to the base of the item
+     */
+    static int nestingOffset(int belowId, int belowHeight, int id){
+        if (id < belowId){
+            return Item.thick;  // Only add the thick of the cup (general metric)
+        }
+        return belowHeight;
+    }
+    
+    /**
+     * Base position of an item placed over another one, following the nesting rule.
      * 
-     * @param items An any ArrayList to recalculated Stack Positions
+     * @param below the item directly below, or null if this is the first item
+     * @param id the id of the item that goes over it
+     * @return the base position of the item
      */
-    private void recalculatedStackPositions(ArrayList<Item> pile){
-        int maxTopFound = 0;  // The top (the data sought)
-        ArrayList<Item> stackTemp = new ArrayList<Item>(pile);
-        pile.clear();   // Because we need to recalculated positions
-        
-        for (Item item : stackTemp){
-            
-            int[] itemPos = topAndBaseItemPosition(item.getId(), item.getHeight(), pile);
-            
-            item.setBasePosition(itemPos[1]);
-            pile.add(item);
-            
-            maxTopFound = max(itemPos[0], maxTopFound);
+    static int basePositionOver(Item below, int id){
+        if (below == null){    //First add
+            return 0;
         }
-        this.currentHeight = maxTopFound;
+        return below.getBasePosition() + nestingOffset(below, id);
     }
     
     /**
@@ -633,24 +1151,8 @@ public class Tower {
      * @return int[newItemTopPosition,newItemBasePosition] the new top and new base of the item that we want to add
      */
     private int[] topAndBaseItemPosition(int id, int itemHeight, ArrayList<Item> items){
-        int newItemBasePosition; 
-        
-        if(items.isEmpty()){    //First add
-            newItemBasePosition = 0;
-        }
-        else{
-            Item lastItem = items.get(items.size() - 1);
-            int lastId = lastItem.getId();
-            int lastBasePosition = lastItem.getBasePosition();
-            int lastHeight = lastItem.getHeight();
-            
-            if(id < lastId){
-                newItemBasePosition = lastBasePosition + Item.thick;  // Only add the thick of the cup (general metric)
-            }
-            else{
-                newItemBasePosition = lastBasePosition + lastHeight;         
-            }
-        }
+        Item lastItem = items.isEmpty() ? null : items.get(items.size() - 1);
+        int newItemBasePosition = basePositionOver(lastItem, id);
         
         int newItemTopPosition = newItemBasePosition + itemHeight;
             
@@ -0,0 +1,229 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Point-in-time checkpoint of a Tower in a compact binary file.
+ *
+ * <p>Layout, with every number as an unsigned LEB128 varint:</p>
+ * <ul>
+ *   <li>the magic int (4 bytes), then width and maxHeight, zigzag encoded
+ *       since a tower may be built with negative ones, and the item count</li>
+ *   <li>per item, from base to top: the id delta from the item below,
+ *       zigzag encoded and shifted left by one with the kind in the low
+ *       bit (1 for a cup), then its color: 0 and three RGB bytes for a
+ *       color not seen before, or k for the k-th color already seen</li>
+ * </ul>
+ *
+ * <p>A cup and its lid share a color, and ids of an ordered tower differ
+ * by little, so most items take two or three bytes. Both directions map
+ * the file. read() decodes it in a single pass and makes one Color per
+ * distinct color, then loads the store once. write() measures the
+ * checkpoint in a first pass and maps exactly that many bytes, so the
+ * file is never truncated while it is mapped.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerCheckpoint {
+    private static final int MAGIC = 0x54574350;   // "TWCP"
+
+    /**
+     * Utility class, not meant to be instantiated.
+     */
+    private TowerCheckpoint() {
+    }
+
+    /**
+     * Write a checkpoint of a tower, replacing the file if it exists.
+     * @param tower the tower to save
+     * @param file the checkpoint file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Tower tower, Path file) throws IOException {
+        List<Item> items = tower.getStack();
+        long length = encode(tower, items, null);   // exact size, so the mapping is never truncated
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("La torre es demasiado grande para un checkpoint");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            encode(tower, items, out);
+            out.force();
+        }
+    }
+
+    /**
+     * Read a checkpoint into a new headless tower.
+     * @param file the checkpoint file
+     * @return the tower, with the default store
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Tower read(Path file) throws IOException {
+        return read(file, new ArrayItemStore());
+    }
+
+    /**
+     * Read a checkpoint into a new headless tower with the given store.
+     * @param file the checkpoint file
+     * @param store an empty store for the tower
+     * @return the tower
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Tower read(Path file, ItemStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC) {
+                    throw new IOException("No es un checkpoint de torre: " + file);
+                }
+                int width = unzigzag((int) getVarint(in));
+                int maxHeight = unzigzag((int) getVarint(in));
+                long count = getVarint(in);
+                if (count < 0 || count > in.remaining() / 2) {   // every item takes two bytes or more
+                    throw new IOException("Checkpoint de torre dañado: " + file);
+                }
+
+                ArrayList<Item> items = new ArrayList<Item>((int) count);
+                Color[] palette = new Color[16];
+                int colors = 0;
+                int id = 0;
+                for (int k = 0; k < count; k++) {
+                    long code = getVarint(in);
+                    id += unzigzag((int) (code >>> 1));
+                    long colorCode = getVarint(in);
+                    if (colorCode < 0 || colorCode > colors) {
+                        throw new IOException("Checkpoint de torre dañado: " + file);
+                    }
+                    Color color;
+                    if (colorCode == 0) {
+                        int rgb = ((in.get() & 0xFF) << 16) | ((in.get() & 0xFF) << 8) | (in.get() & 0xFF);
+                        color = new Color(rgb);
+                        if (colors == palette.length) {
+                            palette = Arrays.copyOf(palette, colors * 2);
+                        }
+                        palette[colors++] = color;
+                    } else {
+                        color = palette[(int) colorCode - 1];
+                    }
+                    items.add(((code & 1) == 1) ? new Cup(id, color) : new Lid(id, color));
+                }
+                Tower tower = Tower.headless(width, maxHeight, store);
+                tower.restore(items);
+                return tower;
+            } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Checkpoint de torre dañado: " + file, e);
+            }
+        }
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Encode a tower, or only measure it.
+     * @param tower the tower
+     * @param items the stack of the tower, from base to top
+     * @param out the buffer to write to, or null to only count the bytes
+     * @return the number of bytes of the checkpoint
+     */
+    private static long encode(Tower tower, List<Item> items, MappedByteBuffer out) {
+        if (out != null) {
+            out.putInt(MAGIC);
+        }
+        long length = 4;
+        length += putVarint(out, zigzag(tower.getWidth()) & 0xFFFFFFFFL);
+        length += putVarint(out, zigzag(tower.getMaxHeight()) & 0xFFFFFFFFL);
+        length += putVarint(out, items.size());
+
+        IdIndex<int[]> palette = new IdIndex<int[]>();   // rgb + 1 -> {number of the color}
+        int colors = 0;
+        int previousId = 0;
+        for (Item item : items) {
+            int delta = item.getId() - previousId;
+            long zigzag = zigzag(delta) & 0xFFFFFFFFL;   // needs 32 bits, plus one for the kind
+            length += putVarint(out, (zigzag << 1) | (item instanceof Cup ? 1 : 0));
+            previousId = item.getId();
+
+            int rgb = item.getColor().getRGB() & 0xFFFFFF;
+            int[] seen = palette.get(rgb + 1);
+            if (seen != null) {
+                length += putVarint(out, seen[0] + 1);
+            } else {
+                if (out != null) {
+                    out.put((byte) 0);
+                    out.put((byte) (rgb >>> 16));
+                    out.put((byte) (rgb >>> 8));
+                    out.put((byte) rgb);
+                }
+                length += 4;
+                palette.put(rgb + 1, new int[]{colors++});
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write an unsigned LEB128 varint: seven bits per byte, low bits first.
+     * @param out the buffer, or null to only count the bytes
+     * @param value the value, not negative
+     * @return the number of bytes of the varint
+     */
+    private static int putVarint(MappedByteBuffer out, long value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            if (out != null) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+            }
+            value >>>= 7;
+            bytes++;
+        }
+        if (out != null) {
+            out.put((byte) value);
+        }
+        return bytes;
+    }
+
+    /**
+     * Read an unsigned LEB128 varint.
+     * @param in the buffer
+     * @return the value
+     */
+    private static long getVarint(MappedByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Map a signed value to an unsigned one, so small negatives stay small.
+     * Ids are positive, so a delta fits in an int; any int gives 32 unsigned bits.
+     * @param value the signed value
+     * @return the zigzag value
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Inverse of zigzag.
+     * @param value the zigzag value
+     * @return the signed value
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,168 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Unit tests for the TowerCheckpoint class.
+ * Writes headless towers to a temporary file and reads them back.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerCheckpointTest
+{
+    private Path file;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a temporary file for the checkpoint.
+     */
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("tower", ".ckpt");
+    }
+
+    /**
+     * Tears down the test fixture.
+     * Deletes the checkpoint file.
+     */
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test a checkpoint keeps the dimensions, the stack and the colors.
+     */
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        Tower tower = Tower.headless(12, 40);
+        tower.pushCup(5);
+        tower.pushLid(5);
+        tower.pushCup(2);
+        tower.pushLid(9);
+        TowerCheckpoint.write(tower, file);
+
+        Tower read = TowerCheckpoint.read(file);
+        assertTrue(read.isHeadless());
+        assertEquals(12, read.getWidth());
+        assertEquals(40, read.getMaxHeight());
+        assertArrayEquals(tower.stackingStack(), read.stackingStack());
+        assertEquals(tower.height(), read.height());
+        List<Item> expected = tower.getStack();
+        List<Item> actual = read.getStack();
+        for (int k = 0; k < expected.size(); k++) {
+            assertEquals(expected.get(k).getColor(), actual.get(k).getColor());
+        }
+        assertSame(actual.get(0).getColor(), actual.get(1).getColor());   // one Color per distinct color
+    }
+
+    /**
+     * Test an empty tower and ids far apart survive the delta encoding.
+     */
+    @Test
+    public void testEmptyAndLargeIds() throws IOException
+    {
+        Tower tower = Tower.headless(10, 30);
+        TowerCheckpoint.write(tower, file);
+        assertEquals(0, TowerCheckpoint.read(file).height());
+
+        tower = Tower.headless(10, Integer.MAX_VALUE);
+        tower.pushLid(Integer.MAX_VALUE);
+        tower.pushLid(1);
+        tower.pushCup(Integer.MAX_VALUE - 1);
+        TowerCheckpoint.write(tower, file);
+        assertArrayEquals(tower.stackingStack(),
+                          TowerCheckpoint.read(file, new TreeItemStore()).stackingStack());
+    }
+
+    /**
+     * Test negative dimensions survive, and the file holds exactly the
+     * bytes of the checkpoint.
+     */
+    @Test
+    public void testNegativeDimensions() throws IOException
+    {
+        Tower tower = Tower.headless(Integer.MIN_VALUE, -1);
+        TowerCheckpoint.write(tower, file);
+        assertEquals(4 + 5 + 1 + 1, Files.size(file));
+        Tower read = TowerCheckpoint.read(file);
+        assertEquals(Integer.MIN_VALUE, read.getWidth());
+        assertEquals(-1, read.getMaxHeight());
+    }
+
+    /**
+     * Test an ordered tower of cups with their lids takes a few bytes per item.
+     */
+    @Test
+    public void testCompact() throws IOException
+    {
+        Tower tower = Tower.headless(2000, 100000);
+        for (int id = 1000; id >= 1; id--) {
+            tower.pushCup(id);
+            tower.pushLid(id);
+        }
+        TowerCheckpoint.write(tower, file);
+        assertTrue(Files.size(file) < 2000 * 4);   // new color: 1 + 1 + 3 bytes, lid: 1 + 2
+        assertArrayEquals(tower.stackingStack(), TowerCheckpoint.read(file).stackingStack());
+    }
+
+    /**
+     * Test other and damaged files are rejected.
+     */
+    @Test
+    public void testRejectsBadFiles() throws IOException
+    {
+        Files.write(file, new byte[]{1, 2, 3, 4, 5});
+        assertThrows(IOException.class, () -> TowerCheckpoint.read(file));
+
+        Tower tower = Tower.headless(10, 30);
+        tower.pushCup(3);
+        TowerCheckpoint.write(tower, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 2));
+        assertThrows(IOException.class, () -> TowerCheckpoint.read(file));
+    }
+
+    /**
+     * Test a color code past the colors seen so far and an item count
+     * larger than the file can hold are rejected, not read as a null color
+     * or allocated.
+     */
+    @Test
+    public void testRejectsBadCountAndColorCode() throws IOException
+    {
+        byte[] magic = {0x54, 0x57, 0x43, 0x50};
+        byte[] header = {20, 60};   // width 10 and maxHeight 30, zigzag encoded
+        byte[] unknownColor = {2, 13, 0, 1, 2, 3, 0, 5};   // cup 3 with a new color, then lid 3 with color 5
+        Files.write(file, concat(magic, header, unknownColor));
+        assertThrows(IOException.class, () -> TowerCheckpoint.read(file));
+
+        byte[] hugeCount = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 13, 0, 1, 2, 3};
+        Files.write(file, concat(magic, header, hugeCount));
+        assertThrows(IOException.class, () -> TowerCheckpoint.read(file));
+    }
+
+    /**
+     * Join byte arrays.
+     * @param parts the arrays, in order
+     * @return one array with all their bytes
+     */
+    private static byte[] concat(byte[]... parts)
+    {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * A failed operation of a Tower, as a code that programs can test and a
+ * message for people. Errors are delivered to the TowerErrorListener of
+ * the tower, on a thread of their own.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerError {
+
+    /**
+     * Why an operation failed.
+     */
+    public enum Code {
+        /** The id of a cup or lid to push was zero or negative. */
+        NON_POSITIVE_ID,
+        /** A cup or lid with the same id is already in the tower. */
+        DUPLICATE_ID,
+        /** The item would go above the maximum height of the tower. */
+        OVERFLOW,
+        /** There is no cup or lid with the given id, or none at all to pop. */
+        NOT_FOUND,
+        /** There is no change to undo or to redo. */
+        NO_HISTORY,
+        /** The tower is too tall to be shown on the screen. */
+        DOES_NOT_FIT_SCREEN
+    }
+
+    private final Code code;
+    private final String operation;
+    private final int id;
+    private final String message;
+
+    /**
+     * Create an error.
+     * @param code why the operation failed
+     * @param operation the name of the Tower method, e.g. "pushCup"
+     * @param id the id given to the operation, 0 if it takes none
+     * @param message a description for the user
+     */
+    public TowerError(Code code, String operation, int id, String message) {
+        this.code = code;
+        this.operation = operation;
+        this.id = id;
+        this.message = message;
+    }
+
+    /**
+     * @return why the operation failed
+     */
+    public Code getCode() {
+        return code;
+    }
+
+    /**
+     * @return the name of the Tower method that failed
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the id given to the operation, 0 if it takes none
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return a description for the user
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return code + " in " + operation + ((id != 0) ? "(" + id + ")" : "()") + ": " + message;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Receives the errors of a Tower.
+ * It is called on the error thread shared by every tower, one error at
+ * a time and in the order they happened, never on the thread that ran
+ * the operation. So a slow listener never delays the tower, and it must
+ * hand any Swing work to the event dispatch thread.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public interface TowerErrorListener {
+
+    /**
+     * Called after an operation of the tower failed.
+     * @param error what failed and why
+     */
+    void towerError(TowerError error);
+}
@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the error channel of Tower.
+ * Checks the code of each failure, the order of delivery and that a
+ * listener never runs on, nor delays, the thread of the operation.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerErrorTest
+{
+    private Tower tower;
+    private BlockingQueue<TowerError> errors;
+    private BlockingQueue<Thread> threads;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a headless tower with width=10 and maxHeight=10 and a
+     * listener that queues every error with the thread that got it.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        tower = Tower.headless(10, 10);
+        errors = new LinkedBlockingQueue<TowerError>();
+        threads = new LinkedBlockingQueue<Thread>();
+        tower.setErrorListener(error -> {
+            threads.add(Thread.currentThread());
+            errors.add(error);
+        });
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test each failure is delivered with its code, in order.
+     */
+    @Test
+    public void testCodesInOrder() throws InterruptedException
+    {
+        tower.pushCup(0);
+        tower.pushCup(3);
+        tower.pushCup(3);
+        tower.pushCup(9);
+        tower.removeLid(4);
+        tower.popLid();
+        tower.redo();
+
+        assertEquals(TowerError.Code.NON_POSITIVE_ID, next().getCode());
+        TowerError duplicate = next();
+        assertEquals(TowerError.Code.DUPLICATE_ID, duplicate.getCode());
+        assertEquals("pushCup", duplicate.getOperation());
+        assertEquals(3, duplicate.getId());
+        assertEquals(TowerError.Code.OVERFLOW, next().getCode());
+        assertEquals(TowerError.Code.NOT_FOUND, next().getCode());
+        assertEquals(TowerError.Code.NOT_FOUND, next().getCode());
+        assertEquals(TowerError.Code.NO_HISTORY, next().getCode());
+        assertNull(errors.poll(100, TimeUnit.MILLISECONDS));
+        assertNotEquals(Thread.currentThread(), threads.poll());
+    }
+
+    /**
+     * Test a batch reports its failures through its results only.
+     */
+    @Test
+    public void testBatchDeliversNothing() throws InterruptedException
+    {
+        boolean[] results = tower.applyAll(Arrays.asList(TowerOp.pushCup(2), TowerOp.pushCup(2)));
+        assertArrayEquals(new boolean[]{true, false}, results);
+        assertNull(errors.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test a listener that blocks does not block the operations.
+     */
+    @Test
+    public void testSlowListenerDoesNotBlock() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        tower.setErrorListener(error -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            long start = System.nanoTime();
+            for (int k = 0; k < 100; k++) {
+                tower.pushLid(-1);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            assertFalse(tower.ok());
+        } finally {
+            release.countDown();   // the error thread is shared by every tower
+        }
+    }
+
+    /**
+     * Test a tower without a listener still reports through ok().
+     */
+    @Test
+    public void testNoListener()
+    {
+        tower.setErrorListener(null);
+        tower.popCup();
+        assertFalse(tower.ok());
+    }
+
+    /**
+     * Wait for the next delivered error.
+     * @return the error
+     */
+    private TowerError next() throws InterruptedException
+    {
+        TowerError error = errors.poll(5, TimeUnit.SECONDS);
+        assertNotNull(error);
+        return error;
+    }
+}
@@ -0,0 +1,145 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events of the tower, so a recording shows tower
+ * activity by name instead of anonymous Swing and ArrayList frames.
+ *
+ * <p>Tower begins an event when an operation starts and commits it when
+ * the operation ends, successful or not. The fields are only filled when
+ * shouldCommit() is true, so an event that is not being recorded costs a
+ * check of a flag and no other work.</p>
+ *
+ * <pre>
+ *     java -XX:StartFlightRecording=filename=tower.jfr ...
+ *     jfr print --categories "Stacking Cups" tower.jfr
+ * </pre>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public final class TowerEvents {
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private TowerEvents() {
+    }
+
+    /**
+     * Fields shared by every change of a tower: the state it left.
+     */
+    @Category({"Stacking Cups", "Tower"})
+    public abstract static class Change extends Event {
+        @Label("Stack Size")
+        @Description("Number of items in the tower after the change")
+        int stackSize;
+
+        @Label("Height")
+        @Description("Height of the tower in cm after the change")
+        int height;
+
+        @Label("Ok")
+        @Description("False if the change was rejected")
+        boolean ok;
+    }
+
+    /**
+     * Fields of a change to a single item.
+     */
+    public abstract static class ItemChange extends Change {
+        @Label("Item Id")
+        int itemId;
+
+        @Label("Item Type")
+        @Description("cup or lid")
+        String itemType;
+    }
+
+    /**
+     * pushCup or pushLid.
+     */
+    @Name("stackingcups.TowerPush")
+    @Label("Tower Push")
+    public static class Push extends ItemChange {
+    }
+
+    /**
+     * popCup or popLid.
+     */
+    @Name("stackingcups.TowerPop")
+    @Label("Tower Pop")
+    public static class Pop extends ItemChange {
+    }
+
+    /**
+     * removeCup or removeLid.
+     */
+    @Name("stackingcups.TowerRemove")
+    @Label("Tower Remove")
+    public static class Remove extends ItemChange {
+    }
+
+    /**
+     * orderTower or reverseTower.
+     */
+    @Name("stackingcups.TowerReorder")
+    @Label("Tower Reorder")
+    public static class Reorder extends Change {
+        @Label("Largest First")
+        @Description("True for orderTower, false for reverseTower")
+        boolean largestFirst;
+
+        @Label("Items Dropped")
+        @Description("Items left out because they did not fit")
+        int itemsDropped;
+    }
+
+    /**
+     * A pass of a store that computes the base positions of the items.
+     */
+    @Name("stackingcups.PositionRecompute")
+    @Label("Position Recompute")
+    @Category({"Stacking Cups", "Store"})
+    public static class PositionRecompute extends Event {
+        @Label("From Index")
+        @Description("First stack index recomputed")
+        int fromIndex;
+
+        @Label("Items Recomputed")
+        int itemsRecomputed;
+
+        @Label("Stack Size")
+        int stackSize;
+
+        @Label("Height")
+        @Description("Height of the tower in cm after the pass")
+        int height;
+    }
+
+    /**
+     * A redraw of the dirty region of the Canvas, on the event dispatch
+     * thread. It covers every change made since the previous one.
+     */
+    @Name("stackingcups.CanvasRedraw")
+    @Label("Canvas Redraw")
+    @Category({"Stacking Cups", "Canvas"})
+    public static class CanvasRedraw extends Event {
+        @Label("Shapes Repainted")
+        @Description("Shapes that intersect the dirty region")
+        int shapesRepainted;
+
+        @Label("Shapes")
+        @Description("Shapes on the canvas")
+        int shapes;
+
+        @Label("Region Width")
+        int regionWidth;
+
+        @Label("Region Height")
+        int regionHeight;
+    }
+}
@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Unit tests for the TowerEvents class.
+ * Records a headless tower with JDK Flight Recorder and checks the
+ * events and their fields.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerEventsTest
+{
+    private Tower tower;
+    private Recording recording;
+    private Path file;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a headless tower with width=10 and maxHeight=100 and starts
+     * a recording of every tower event.
+     */
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        tower = Tower.headless(10, 100);
+        file = Files.createTempFile("tower", ".jfr");
+        recording = new Recording();
+        for (String name : new String[]{"TowerPush", "TowerPop", "TowerRemove",
+                                        "TowerReorder", "PositionRecompute"}) {
+            recording.enable("stackingcups." + name).withoutThreshold();
+        }
+        recording.start();
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown() throws Exception
+    {
+        recording.close();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test every change is recorded with the item and the state it left.
+     */
+    @Test
+    public void testChangesAreRecorded() throws Exception
+    {
+        tower.pushCup(4);
+        tower.pushLid(4);
+        tower.pushCup(2);
+        tower.pushCup(2);   // duplicate
+        tower.popLid();
+        tower.removeCup(2);
+
+        List<RecordedEvent> pushes = events("stackingcups.TowerPush");
+        assertEquals(4, pushes.size());
+        RecordedEvent lid = pushes.get(1);
+        assertEquals(4, lid.getInt("itemId"));
+        assertEquals("lid", lid.getString("itemType"));
+        assertEquals(2, lid.getInt("stackSize"));
+        assertEquals(8, lid.getInt("height"));
+        assertTrue(lid.getBoolean("ok"));
+        assertFalse(pushes.get(3).getBoolean("ok"));
+
+        RecordedEvent pop = events("stackingcups.TowerPop").get(0);
+        assertEquals(4, pop.getInt("itemId"));
+        assertEquals(2, pop.getInt("stackSize"));
+
+        RecordedEvent remove = events("stackingcups.TowerRemove").get(0);
+        assertEquals(2, remove.getInt("itemId"));
+        assertEquals(1, remove.getInt("stackSize"));
+        assertEquals(7, remove.getInt("height"));
+    }
+
+    /**
+     * Test an order and a reverse are recorded with the items they dropped,
+     * and the position passes under them too.
+     */
+    @Test
+    public void testReordersAreRecorded() throws Exception
+    {
+        Tower small = Tower.headless(10, 9);
+        small.pushCup(5);
+        small.pushCup(1);
+        small.orderTower();
+        small.reverseTower();   // 1 then 5 needs 10 cm
+
+        List<RecordedEvent> reorders = events("stackingcups.TowerReorder");
+        assertEquals(2, reorders.size());
+        assertTrue(reorders.get(0).getBoolean("largestFirst"));
+        assertEquals(0, reorders.get(0).getInt("itemsDropped"));
+        assertFalse(reorders.get(1).getBoolean("largestFirst"));
+        assertEquals(1, reorders.get(1).getInt("itemsDropped"));
+        assertEquals(1, reorders.get(1).getInt("stackSize"));
+        assertFalse(events("stackingcups.PositionRecompute").isEmpty());
+    }
+
+    /**
+     * Stop the recording and read the events of one type, in order.
+     * @param name the name of the event type
+     * @return the events
+     */
+    private List<RecordedEvent> events(String name) throws Exception
+    {
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+               .filter(e -> e.getEventType().getName().equals(name))
+               .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+               .collect(Collectors.toList());
+    }
+}
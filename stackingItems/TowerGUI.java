@@ -1,13 +1,27 @@
 import java.util.ArrayList;
-import java.awt.Color;
+import java.util.HashMap;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import javax.swing.SwingUtilities;
 import static java.lang.Math.*;
 
 /**
  * Visual representation of the Tower on the Canvas.
  * Manages the drawing of all cups, lids, tower walls, and centimeter marks.
- * Reuses Rectangle shapes from the shapes project for all drawing.
+ * Reuses Rectangle shapes from the shapes project to draw the items.
  * The tower is drawn with walls on left and right, a base at the bottom,
  * and horizontal tick marks for each centimeter of height on the left wall.
+ *
+ * <p>The GUI is retained: it keeps the CupGUI or LidGUI of every item
+ * between refreshes. A refresh only creates the GUIs of new items, moves
+ * the items whose position changed and erases the removed ones. The
+ * structure is drawn again only when the layout (scale, width or
+ * maxHeight) changes: it is painted once into an image that the Canvas
+ * keeps as its background layer.</p>
+ *
+ * <p>The canvas is a viewport over the tower: it can be zoomed and
+ * scrolled, so towers taller than the canvas can be shown. Only the items
+ * that cross the viewport are drawn, found with Tower.itemsBetween.</p>
  * 
  * @author Acero - Quiceno
  * @version 3.0
@@ -15,25 +29,24 @@ import static java.lang.Math.*;
 public class TowerGUI {
     private Tower tower;
     private boolean isVisible;
-    private ArrayList<CupGUI> cupGUIs;
-    private ArrayList<LidGUI> lidGUIs;
-    private ArrayList<Rectangle> towerStructure;
+    private HashMap<Item, CupGUI> cupGUIs;   // GUI of every cup on the canvas
+    private HashMap<Item, LidGUI> lidGUIs;   // GUI of every lid on the canvas
+    private HashMap<Item, CupGUI> nextCupGUIs;   // empty, filled by drawItems and swapped
+    private HashMap<Item, LidGUI> nextLidGUIs;
+    private BufferedImage structureLayer;    // walls, base and marks, null if not drawn
+    private int drawnScale;                  // layout of the structure on the canvas
+    private int drawnWidth;
+    private int drawnMaxHeight;
+    private int drawnViewBottom;
+    private int zoom;                        // pixels per cm chosen by the user, 0 to fit
+    private int viewBottom;                  // lowest cm shown by the viewport
     
-    // Pixels
+    // Pixels (margins, walls and marks are in TowerLayout)
     private static final int CANVAS_WIDTH = 300;
     private static final int CANVAS_HEIGHT = 300;
     
-    private static final int MARGIN_LEFT = 40;
-    private static final int MARGIN_BOTTOM = 15;
-    private static final int MARGIN_TOP = 10;
-    private static final int MARGIN_RIGHT = 10;
-    
-    private static final int MARK_WIDTH = 5;
-    private static final int MARK_HEIGHT = 2;
-
-    private static final int WALL_THICKNESS = 2;
-    
     private static final int MIN_SCALE = 2; // Minimum scale factor to ensure items are visible
+    private static final int MAX_SCALE = 64; // Maximum zoom
 
     public static int scaleFactor; // Calculated pixels per logical cm — computed at draw time.
 
@@ -46,53 +59,96 @@ public class TowerGUI {
     public TowerGUI(Tower tower) {
         this.tower = tower;
         this.isVisible = false;
-        this.cupGUIs = new ArrayList<CupGUI>();
-        this.lidGUIs = new ArrayList<LidGUI>();
-        this.towerStructure = new ArrayList<Rectangle>();
+        this.cupGUIs = new HashMap<Item, CupGUI>();
+        this.lidGUIs = new HashMap<Item, LidGUI>();
+        this.nextCupGUIs = new HashMap<Item, CupGUI>();
+        this.nextLidGUIs = new HashMap<Item, LidGUI>();
+        this.structureLayer = null;
+        this.drawnScale = 0;   // nothing drawn yet
+        this.zoom = 0;
+        this.viewBottom = 0;
         this.scaleFactor = MIN_SCALE;
     }
 
     /**
      * Calculate the scale factor so the tower fits within the Canvas.
      * Takes the minimum of horizontal and vertical scales, and ensures
-     * it is at least MIN_SCALE.
+     * it is at least MIN_SCALE. If the user zoomed, that zoom is used.
      * 
      * @return the computed scale factor in pixels per cm
      */
     private int calculateScaleFactor() {
-        int availableWidth = CANVAS_WIDTH - MARGIN_LEFT - MARGIN_RIGHT;
-        int availableHeight = CANVAS_HEIGHT - MARGIN_TOP - MARGIN_BOTTOM;
-        int towerLogicalWidth = tower.getWidth();
-        int towerLogicalHeight = tower.getMaxHeight();
-        if (towerLogicalWidth <= 0 || towerLogicalHeight <= 0) {
-            return MIN_SCALE;
-        }
-        int scaleW = availableWidth / towerLogicalWidth;
-        int scaleH = availableHeight / towerLogicalHeight;
-        int scale = Math.min(scaleW, scaleH);
-        if (scale < MIN_SCALE) {
-            scale = MIN_SCALE;
+        if (zoom > 0) {
+            return zoom;
         }
-        return scale;
+        return TowerLayout.fitScale(tower.getWidth(), tower.getMaxHeight(),
+                                    CANVAS_WIDTH, CANVAS_HEIGHT, MIN_SCALE);
     }
 
+
     /**
      * Check if the tower fits on the Canvas screen.
+     * Only the width matters: a tower taller than the canvas is shown
+     * through the viewport and can be scrolled.
      * 
      * @return true if the tower can be displayed without exceeding Canvas bounds
      */
     public boolean fitsOnScreen() {
-        int scale = calculateScaleFactor();
-        int towerPixelWidth = tower.getWidth() * scale;
-        int towerPixelHeight = tower.getMaxHeight() * scale;
-        int requiredWidth = MARGIN_LEFT + towerPixelWidth + MARGIN_RIGHT;
-        int requiredHeight = MARGIN_TOP + towerPixelHeight + MARGIN_BOTTOM;
-        return requiredWidth <= CANVAS_WIDTH && requiredHeight <= CANVAS_HEIGHT;
+        return layout(calculateScaleFactor()).fitsWidth();
+    }
+
+
+    /**
+     * Zoom in, doubling the pixels per cm up to MAX_SCALE.
+     */
+    public void zoomIn() {
+        zoom = min(MAX_SCALE, calculateScaleFactor() * 2);
+        clampView();
+        refresh();
+    }
+
+    /**
+     * Zoom out, halving the pixels per cm down to 1.
+     */
+    public void zoomOut() {
+        zoom = max(1, calculateScaleFactor() / 2);
+        clampView();
+        refresh();
+    }
+
+    /**
+     * Move the viewport up or down the tower.
+     * @param cm how many cm to move (positive is up)
+     */
+    public void scroll(int cm) {
+        viewBottom += cm;
+        clampView();
+        refresh();
+    }
+
+    /**
+     * Get the layout of the canvas for a scale and the current viewport.
+     * @param scale pixels per cm
+     * @return the layout
+     */
+    private TowerLayout layout(int scale) {
+        return new TowerLayout(tower.getWidth(), tower.getMaxHeight(), scale,
+                               viewBottom, CANVAS_WIDTH, CANVAS_HEIGHT);
+    }
+
+    /**
+     * Keep the viewport inside the tower.
+     */
+    private void clampView() {
+        int visibleHeight = layout(calculateScaleFactor()).visibleHeight();
+        int highestBottom = max(0, tower.getMaxHeight() - visibleHeight);
+        viewBottom = max(0, min(viewBottom, highestBottom));
     }
 
     /**
      * Draw the complete tower on the canvas, including structure and items.
-     * Recalculates the scale factor before drawing.
+     * Recalculates the scale factor before drawing. If the layout did not
+     * change, only the items that changed are drawn again.
      * Does nothing if the tower is not visible.
      */
     public void draw() {
@@ -100,8 +156,17 @@ public class TowerGUI {
             return;
         }
         scaleFactor = calculateScaleFactor();
-        eraseAll();
-        drawTowerStructure();
+        clampView();
+        if (scaleFactor != drawnScale || tower.getWidth() != drawnWidth
+                || tower.getMaxHeight() != drawnMaxHeight
+                || viewBottom != drawnViewBottom) {
+            eraseAll();
+            drawTowerStructure();
+            drawnScale = scaleFactor;
+            drawnWidth = tower.getWidth();
+            drawnMaxHeight = tower.getMaxHeight();
+            drawnViewBottom = viewBottom;
+        }
         drawItems();
     }
 
@@ -114,12 +179,14 @@ public class TowerGUI {
     }
 
     /**
-     * Refresh the display by erasing and redrawing everything.
+     * Refresh the display with the current state of the tower.
      */
     public void refresh() {
+        long start = TowerMetrics.start();
         if (isVisible) {
             draw();
         }
+        TowerMetrics.stop(TowerMetrics.Operation.GUI_REFRESH, start);
     }
 
     /**
@@ -137,6 +204,26 @@ public class TowerGUI {
         }
     }
 
+    /**
+     * Show an error of the tower as a toast on the canvas, if the tower is
+     * visible or it failed to become visible. It is the error listener of
+     * every tower with a GUI, so it runs on the error thread. The toast
+     * only goes to a canvas already on screen: a hidden tower never makes
+     * the canvas appear nor brings it to the front.
+     * @param error the error to show
+     */
+    public void showError(TowerError error) {
+        SwingUtilities.invokeLater(() -> {
+            if (!isVisible && error.getCode() != TowerError.Code.DOES_NOT_FIT_SCREEN) {
+                return;
+            }
+            Canvas canvas = Canvas.getVisibleCanvas();
+            if (canvas != null) {
+                canvas.showToast(error.getMessage());
+            }
+        });
+    }
+
     /**
      * Check if the tower is currently visible on the canvas.
      * @return true if the tower is visible
@@ -148,113 +235,82 @@ public class TowerGUI {
 
     /**
      * Draw the tower walls (left, right), base, and centimeter tick marks.
-     * Uses Rectangle shapes for all structural elements.
+     * They are painted into a new image, which becomes the background
+     * layer of the Canvas.
      */
     private void drawTowerStructure() {
-        int towerPixelWidth = tower.getWidth() * scaleFactor;
-        int towerPixelHeight = tower.getMaxHeight() * scaleFactor;
-        int baseY = CANVAS_HEIGHT - MARGIN_BOTTOM;
-        int leftX = MARGIN_LEFT;
-
-        // Left wall
-        Rectangle leftWall = new Rectangle();
-        leftWall.changeSize(towerPixelHeight, WALL_THICKNESS);
-        leftWall.setPosition(leftX - WALL_THICKNESS, baseY - towerPixelHeight);
-        leftWall.changeColor(Color.black);
-        leftWall.makeVisible();
-        towerStructure.add(leftWall);
-
-        // Right wall
-        Rectangle rightWall = new Rectangle();
-        rightWall.changeSize(towerPixelHeight, WALL_THICKNESS);
-        rightWall.setPosition(leftX + towerPixelWidth, baseY - towerPixelHeight);
-        rightWall.changeColor(Color.black);
-        rightWall.makeVisible();
-        towerStructure.add(rightWall);
-
-        // Base
-        Rectangle base = new Rectangle();
-        base.changeSize(WALL_THICKNESS, towerPixelWidth + 2 * WALL_THICKNESS);
-        base.setPosition(leftX - WALL_THICKNESS, baseY);
-        base.changeColor(Color.black);
-        base.makeVisible();
-        towerStructure.add(base);
-
-        // Marks
-        centimeterTickMarks(leftX, baseY);
+        structureLayer = new BufferedImage(CANVAS_WIDTH, CANVAS_HEIGHT,
+                                           BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = structureLayer.createGraphics();
+        layout(scaleFactor).paintStructure(g);
+        g.dispose();
 
-    }
-
-    /**
-     * Constructs centimeter tick marks on the left side
-     * @param leftX correct position of the marks in left side
-     * @param baseY correct position of the bottom marks (up and down side) (Y axis)
-     */
-    private void centimeterTickMarks(int leftX, int baseY){
-        for (int cm = 1; cm <= tower.getMaxHeight(); cm++) {
-            Rectangle mark = new Rectangle();
-            mark.changeSize(MARK_HEIGHT, MARK_WIDTH);
-            mark.setPosition(leftX - WALL_THICKNESS - MARK_WIDTH,
-                             baseY - (cm * scaleFactor));
-            mark.changeColor(Color.black);
-            mark.makeVisible();
-            towerStructure.add(mark);
-        }
+        Canvas.getCanvas().setBackgroundLayer(structureLayer);
     }
     
     /**
      * Draw all stacked items (cups and lids) in the tower from base to top.
-     * Each item is centered horizontally within the tower walls.
-     * Cups and lids are created as CupGUI/LidGUI instances with the
-     * current dynamic scale factor and tower pixel width.
+     * Every item is drawn with the rectangles of TowerLayout.itemParts.
+     * Items already on the canvas keep their CupGUI/LidGUI and are only
+     * moved if their rectangles changed. New items get a GUI, and the GUIs
+     * of the items no longer in the tower are erased. The maps of this
+     * refresh and of the last one are swapped, so none is allocated here.
      */
     private void drawItems() {
-        cupGUIs.clear();  // To have a clean workstation 
-        lidGUIs.clear();
-
-        int towerPixelWidth = tower.getWidth() * scaleFactor;
-        int baseY = CANVAS_HEIGHT - MARGIN_BOTTOM;  // e.g. 285
-                    // CANVAS_HEIGHT = 300 MARGIN_BOTTOM = 15
-        int leftX = MARGIN_LEFT;
-        int currentY; 
-
-        ArrayList<Item> items = tower.getStack();
+        TowerLayout layout = layout(scaleFactor);
+        ArrayList<Item> items = tower.itemsBetween(viewBottom, layout.viewTop());
         for (Item item : items) {
-            int itemPixelHeight =  item.getTopPosition() * scaleFactor; // Obtain heigth, but in scale factor
-                                        // e.g. height = 7 and scaleFactor = 30, itemPixelHeight = 210
-            currentY = baseY - itemPixelHeight;    
-                                    // Top of the Item (under)
-
-            if (item.getType().equals("cup")) {
-                CupGUI cupGUI = new CupGUI((Cup) item, scaleFactor,
-                                           towerPixelWidth);
-                cupGUI.draw(leftX, currentY);
-                cupGUIs.add(cupGUI);
+            if (item instanceof Cup) {
+                CupGUI cupGUI = cupGUIs.remove(item);
+                if (cupGUI == null) {
+                    cupGUI = new CupGUI((Cup) item);
+                }
+                cupGUI.updatePosition(layout);
+                nextCupGUIs.put(item, cupGUI);
             } else {
-                LidGUI lidGUI = new LidGUI((Lid) item, scaleFactor,
-                                           towerPixelWidth);
-                lidGUI.draw(leftX, currentY);
-                lidGUIs.add(lidGUI);
+                LidGUI lidGUI = lidGUIs.remove(item);
+                if (lidGUI == null) {
+                    lidGUI = new LidGUI((Lid) item);
+                }
+                lidGUI.updatePosition(layout);
+                nextLidGUIs.put(item, lidGUI);
             }
         }
+
+        // What is left belongs to items that were removed
+        for (CupGUI cg : cupGUIs.values()) {
+            cg.erase();
+        }
+        for (LidGUI lg : lidGUIs.values()) {
+            lg.erase();
+        }
+        cupGUIs.clear();
+        lidGUIs.clear();
+        HashMap<Item, CupGUI> drawnCups = cupGUIs;
+        HashMap<Item, LidGUI> drawnLids = lidGUIs;
+        cupGUIs = nextCupGUIs;
+        lidGUIs = nextLidGUIs;
+        nextCupGUIs = drawnCups;
+        nextLidGUIs = drawnLids;
     }
 
     /**
      * Erase all visual elements from the canvas: cup GUIs, lid GUIs,
-     * and tower structure rectangles.
+     * and the tower structure layer.
      */
     private void eraseAll() {
-        for (CupGUI cg : cupGUIs) {
+        for (CupGUI cg : cupGUIs.values()) {
             cg.erase();
         }
         cupGUIs.clear();
-        for (LidGUI lg : lidGUIs) {
+        for (LidGUI lg : lidGUIs.values()) {
             lg.erase();
         }
         lidGUIs.clear();
-        for (Rectangle r : towerStructure) {
-            r.makeInvisible();
+        if (structureLayer != null) {
+            Canvas.getCanvas().setBackgroundLayer(null);
+            structureLayer = null;
         }
-        towerStructure.clear();
+        drawnScale = 0;   // the structure must be drawn again
     }
 }
@@ -0,0 +1,350 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Undo/redo journal of a Tower.
+ * Each change is kept as its inverse in compact form: an added or removed
+ * item is a kind, a stack index and the item itself, and an order or a
+ * reverse is a permutation of the stack indexes that moved plus the items
+ * that did not fit. No copy of the stack is ever kept.
+ *
+ * <p>Undoing or redoing an add or a remove costs what the same push,
+ * insert or removal costs on the store. Undoing or redoing an order or a
+ * reverse is O(n): the permutation is small, but the store is read with
+ * asList() and loaded again whole. An attached log only gets the change:
+ * a redo is logged as the order or reverse it repeats, and an undo as the
+ * window of stack indexes that moved with the items put back in it.</p>
+ *
+ * <p>Entries before the cursor can be undone, entries from the cursor on
+ * can be redone. Recording a new change drops the entries that could be
+ * redone.</p>
+ *
+ * <p>When a TowerLog is attached, every change, undo and redo is also
+ * appended to it as the change it makes to the stack.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerHistory {
+    private static final byte ADD = 0;
+    private static final byte REMOVE = 1;
+    private static final byte REORDER = 2;
+
+    private byte[] kinds;
+    private int[] indexes;      // stack index of the added or removed item
+    private Object[] payloads;  // the Item, or a Reorder
+    private int size;           // number of entries
+    private int cursor;         // entries before it are done
+    private TowerLog log;       // durable copy of the changes, may be null
+
+    /**
+     * Create an empty journal.
+     */
+    public TowerHistory() {
+        this.kinds = new byte[16];
+        this.indexes = new int[16];
+        this.payloads = new Object[16];
+        this.size = 0;
+        this.cursor = 0;
+    }
+
+    /**
+     * Attach a log that receives every change from now on.
+     * @param log the log, or null to stop logging
+     */
+    public void setLog(TowerLog log) {
+        this.log = log;
+    }
+
+    /**
+     * @return true if there is a change to undo
+     */
+    public boolean canUndo() {
+        return cursor > 0;
+    }
+
+    /**
+     * @return true if there is an undone change to redo
+     */
+    public boolean canRedo() {
+        return cursor < size;
+    }
+
+    /**
+     * Record that an item was put at a stack index.
+     * @param index its stack index
+     * @param item the item
+     */
+    public void recordAdd(int index, Item item) {
+        record(ADD, index, item);
+        if (log != null) {
+            log.appendPush(item);
+        }
+    }
+
+    /**
+     * Record that an item was removed from a stack index.
+     * @param index the stack index it had
+     * @param item the item
+     */
+    public void recordRemove(int index, Item item) {
+        record(REMOVE, index, item);
+        if (log != null) {
+            log.appendRemove(item);
+        }
+    }
+
+    /**
+     * Record that the whole stack was replaced. It cannot be undone, so
+     * the journal is emptied.
+     * @param items the new stack, from base to top
+     */
+    public void recordReset(ArrayList<Item> items) {
+        Arrays.fill(payloads, 0, size, null);
+        size = 0;
+        cursor = 0;
+        if (log != null) {
+            log.appendStack(items);
+        }
+    }
+
+    /**
+     * Record that the stack is about to be replaced by a reordering of it.
+     * Must be called before the store is loaded, while the stack index of
+     * every item in ordered is still its index in before. Items at the
+     * same index at the base or at the top are left out of the permutation.
+     * @param before the current stack, from base to top
+     * @param ordered the new stack, a subset of before
+     * @param largestFirst true for an order, false for a reverse
+     */
+    public void recordReorder(ArrayList<Item> before, ArrayList<Item> ordered, boolean largestFirst) {
+        if (log != null) {
+            log.appendReorder(largestFirst ? TowerLog.ORDER : TowerLog.REVERSE);
+        }
+        int oldSize = before.size();
+        int newSize = ordered.size();
+        int from = 0;
+        while (from < newSize && before.get(from) == ordered.get(from)) {
+            from++;
+        }
+        int suffix = 0;
+        while (suffix < newSize - from && before.get(oldSize - 1 - suffix) == ordered.get(newSize - 1 - suffix)) {
+            suffix++;
+        }
+        int[] oldIndexes = new int[newSize - from - suffix];
+        boolean[] kept = new boolean[oldSize - from - suffix];
+        for (int j = 0; j < oldIndexes.length; j++) {
+            oldIndexes[j] = ordered.get(from + j).getStackIndex();
+            kept[oldIndexes[j] - from] = true;
+        }
+        int droppedCount = kept.length - oldIndexes.length;
+        Item[] dropped = new Item[droppedCount];
+        int[] droppedIndexes = new int[droppedCount];
+        for (int k = 0, d = 0; d < droppedCount; k++) {
+            if (!kept[k]) {
+                dropped[d] = before.get(from + k);
+                droppedIndexes[d] = from + k;
+                d++;
+            }
+        }
+        if (oldIndexes.length == 0 && droppedCount == 0) {
+            return;   // nothing moved
+        }
+        record(REORDER, from, new Reorder(oldSize, suffix, oldIndexes, dropped, droppedIndexes,
+                                          largestFirst));
+    }
+
+    /**
+     * Undo the last done change on a store.
+     * @param stack the store of the tower
+     * @return false if there was nothing to undo
+     */
+    public boolean undo(ItemStore stack) {
+        if (!canUndo()) {
+            return false;
+        }
+        cursor--;
+        switch (kinds[cursor]) {
+            case ADD:
+                stack.remove((Item) payloads[cursor]);
+                logRemove((Item) payloads[cursor]);
+                break;
+            case REMOVE:
+                stack.insert(indexes[cursor], (Item) payloads[cursor]);
+                logInsert(indexes[cursor], (Item) payloads[cursor]);
+                break;
+            default:
+                Reorder undone = (Reorder) payloads[cursor];
+                undone.undo(stack, indexes[cursor]);
+                logWindow(stack, indexes[cursor], undone);
+        }
+        return true;
+    }
+
+    /**
+     * Redo the first undone change on a store.
+     * @param stack the store of the tower
+     * @return false if there was nothing to redo
+     */
+    public boolean redo(ItemStore stack) {
+        if (!canRedo()) {
+            return false;
+        }
+        switch (kinds[cursor]) {
+            case ADD:
+                stack.insert(indexes[cursor], (Item) payloads[cursor]);
+                logInsert(indexes[cursor], (Item) payloads[cursor]);
+                break;
+            case REMOVE:
+                stack.remove((Item) payloads[cursor]);
+                logRemove((Item) payloads[cursor]);
+                break;
+            default:
+                Reorder redone = (Reorder) payloads[cursor];
+                redone.redo(stack, indexes[cursor]);
+                logReorder(redone);
+        }
+        cursor++;
+        return true;
+    }
+
+    /**
+     * Log an item put back at a stack index, if there is a log.
+     * @param index the stack index
+     * @param item the item
+     */
+    private void logInsert(int index, Item item) {
+        if (log != null) {
+            log.appendInsert(index, item);
+        }
+    }
+
+    /**
+     * Log a removed item, if there is a log.
+     * @param item the item
+     */
+    private void logRemove(Item item) {
+        if (log != null) {
+            log.appendRemove(item);
+        }
+    }
+
+    /**
+     * Log the items an undone reordering put back, if there is a log: the
+     * window of stack indexes that changed, and the items in it.
+     * @param stack the store of the tower, with the reordering undone
+     * @param from the first stack index that changed
+     * @param reorder the undone reordering
+     */
+    private void logWindow(ItemStore stack, int from, Reorder reorder) {
+        if (log != null) {
+            log.appendWindow(from, reorder.suffix);
+            for (int k = from; k < reorder.oldSize - reorder.suffix; k++) {
+                log.appendPlace(stack.get(k));
+            }
+        }
+    }
+
+    /**
+     * Log a redone reordering, if there is a log. It is applied to the
+     * same stack as the first time, so replaying it gives the same result.
+     * @param reorder the redone reordering
+     */
+    private void logReorder(Reorder reorder) {
+        if (log != null) {
+            log.appendReorder(reorder.largestFirst ? TowerLog.ORDER : TowerLog.REVERSE);
+        }
+    }
+
+    /**
+     * Append an entry after the cursor, dropping the undone ones.
+     * @param kind ADD, REMOVE or REORDER
+     * @param index the stack index of the entry
+     * @param payload the item or the reorder
+     */
+    private void record(byte kind, int index, Object payload) {
+        Arrays.fill(payloads, cursor, size, null);   // let the undone items go
+        size = cursor;
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            indexes = Arrays.copyOf(indexes, size * 2);
+            payloads = Arrays.copyOf(payloads, size * 2);
+        }
+        kinds[size] = kind;
+        indexes[size] = index;
+        payloads[size] = payload;
+        size++;
+        cursor = size;
+    }
+
+    /**
+     * Inverse of an order or a reverse. The stack indexes from, and the
+     * last suffix ones, did not change. In between, the item now at
+     * from + j came from oldIndexes[j], and the dropped items were at
+     * droppedIndexes.
+     */
+    private static class Reorder {
+        private final int oldSize;
+        private final int suffix;
+        private final int[] oldIndexes;
+        private final Item[] dropped;
+        private final int[] droppedIndexes;
+        private final boolean largestFirst;   // an order, or a reverse
+
+        Reorder(int oldSize, int suffix, int[] oldIndexes, Item[] dropped, int[] droppedIndexes,
+                boolean largestFirst) {
+            this.oldSize = oldSize;
+            this.suffix = suffix;
+            this.oldIndexes = oldIndexes;
+            this.dropped = dropped;
+            this.droppedIndexes = droppedIndexes;
+            this.largestFirst = largestFirst;
+        }
+
+        /**
+         * Put the items back where they were before the reordering.
+         * Reloads the whole store, in O(n).
+         * @param stack the store, holding the reordered stack
+         * @param from the first stack index that changed
+         */
+        void undo(ItemStore stack, int from) {
+            ArrayList<Item> current = stack.asList();
+            int newSize = current.size();
+            Item[] old = new Item[oldSize];
+            for (int k = 0; k < from; k++) {
+                old[k] = current.get(k);
+            }
+            for (int k = 1; k <= suffix; k++) {
+                old[oldSize - k] = current.get(newSize - k);
+            }
+            for (int j = 0; j < oldIndexes.length; j++) {
+                old[oldIndexes[j]] = current.get(from + j);
+            }
+            for (int d = 0; d < dropped.length; d++) {
+                old[droppedIndexes[d]] = dropped[d];
+            }
+            stack.load(new ArrayList<Item>(Arrays.asList(old)));
+        }
+
+        /**
+         * Apply the reordering again. Reloads the whole store, in O(n).
+         * @param stack the store, holding the stack before the reordering
+         * @param from the first stack index that changed
+         */
+        void redo(ItemStore stack, int from) {
+            ArrayList<Item> current = stack.asList();
+            int newSize = from + oldIndexes.length + suffix;
+            ArrayList<Item> ordered = new ArrayList<Item>(newSize);
+            for (int k = 0; k < from; k++) {
+                ordered.add(current.get(k));
+            }
+            for (int j = 0; j < oldIndexes.length; j++) {
+                ordered.add(current.get(oldIndexes[j]));
+            }
+            for (int k = suffix; k >= 1; k--) {
+                ordered.add(current.get(oldSize - k));
+            }
+            stack.load(ordered);
+        }
+    }
+}
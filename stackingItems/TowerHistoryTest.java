@@ -0,0 +1,170 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Unit tests for undo and redo of a Tower through its TowerHistory.
+ * Runs on headless towers with both storage engines.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerHistoryTest
+{
+    private Tower tower;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a headless tower with width=10 and maxHeight=30.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        tower = Tower.headless(10, 30);
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test undo with nothing to undo fails and redo with nothing to redo fails.
+     */
+    @Test
+    public void testNothingToUndoOrRedo()
+    {
+        tower.undo();
+        assertFalse(tower.ok());
+        tower.pushCup(1);
+        tower.redo();
+        assertFalse(tower.ok());
+    }
+
+    /**
+     * Test undo and redo of a push and of a removal from the middle.
+     */
+    @Test
+    public void testUndoRedoPushAndRemove()
+    {
+        tower.pushCup(3);
+        tower.pushCup(1);
+        tower.pushLid(3);
+        tower.removeCup(1);
+        assertArrayEquals(new String[]{"cup", "3", "lid", "3"}, tower.stackingStack());
+
+        tower.undo();
+        assertTrue(tower.ok());
+        assertArrayEquals(new String[]{"cup", "3", "cup", "1", "lid", "3"}, tower.stackingStack());
+        tower.undo();
+        assertArrayEquals(new String[]{"cup", "3", "cup", "1"}, tower.stackingStack());
+        tower.redo();
+        tower.redo();
+        assertTrue(tower.ok());
+        assertArrayEquals(new String[]{"cup", "3", "lid", "3"}, tower.stackingStack());
+        assertEquals(6, tower.height());
+    }
+
+    /**
+     * Test undo gives back the same item, with its color.
+     */
+    @Test
+    public void testUndoPopKeepsItem()
+    {
+        tower.pushCup(2);
+        Item cup = tower.getStack().get(0);
+        tower.popCup();
+        tower.undo();
+        assertSame(cup, tower.getStack().get(0));
+    }
+
+    /**
+     * Test undo of an order brings back the old order and the items that
+     * did not fit.
+     */
+    @Test
+    public void testUndoOrderRestoresDroppedItems()
+    {
+        tower = Tower.headless(10, 6);
+        tower.pushCup(3);
+        tower.pushLid(1);
+        tower.pushCup(1);
+        tower.reverseTower();   // cup 3 no longer fits
+        assertArrayEquals(new String[]{"cup", "1", "lid", "1"}, tower.stackingStack());
+
+        tower.undo();
+        assertArrayEquals(new String[]{"cup", "3", "lid", "1", "cup", "1"}, tower.stackingStack());
+        assertEquals(5, tower.height());
+        tower.redo();
+        assertArrayEquals(new String[]{"cup", "1", "lid", "1"}, tower.stackingStack());
+        tower.orderTower();     // nothing moves, so nothing is recorded
+        tower.undo();
+        assertArrayEquals(new String[]{"cup", "3", "lid", "1", "cup", "1"}, tower.stackingStack());
+    }
+
+    /**
+     * Test a new change after an undo drops the changes to redo.
+     */
+    @Test
+    public void testNewChangeDropsRedo()
+    {
+        tower.pushCup(1);
+        tower.pushCup(2);
+        tower.undo();
+        tower.pushLid(1);
+        tower.redo();
+        assertFalse(tower.ok());
+        assertArrayEquals(new String[]{"cup", "1", "lid", "1"}, tower.stackingStack());
+    }
+
+    /**
+     * Test undoing every step of a random run goes back through the same
+     * states, with both storage engines.
+     */
+    @Test
+    public void testUndoWalksBackThroughStates()
+    {
+        for (ItemStore store : new ItemStore[]{new ArrayItemStore(), new TreeItemStore()}) {
+            tower = Tower.headless(100, 400, store);
+            Random random = new Random(11);
+            ArrayList<String[]> states = new ArrayList<String[]>();
+            states.add(tower.stackingStack());
+            for (int step = 0; step < 2000; step++) {
+                int id = 1 + random.nextInt(30);
+                switch (random.nextInt(8)) {
+                    case 0: case 1: tower.pushCup(id); break;
+                    case 2: case 3: tower.pushLid(id); break;
+                    case 4: tower.removeCup(id); break;
+                    case 5: tower.removeLid(id); break;
+                    case 6: tower.popLid(); break;
+                    default:
+                        if (random.nextBoolean()) {
+                            tower.orderTower();
+                        } else {
+                            tower.reverseTower();
+                        }
+                }
+                String[] state = tower.stackingStack();
+                if (!java.util.Arrays.equals(state, states.get(states.size() - 1))) {
+                    states.add(state);
+                }
+            }
+            for (int k = states.size() - 1; k > 0; k--) {
+                assertArrayEquals(states.get(k), tower.stackingStack());
+                do {
+                    tower.undo();   // orders that changed nothing are not recorded
+                } while (java.util.Arrays.equals(states.get(k), tower.stackingStack()));
+            }
+            assertArrayEquals(states.get(0), tower.stackingStack());
+            tower.undo();
+            assertFalse(tower.ok());
+        }
+    }
+}
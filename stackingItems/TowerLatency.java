@@ -0,0 +1,86 @@
+import java.beans.ConstructorProperties;
+
+/**
+ * Measures of one kind of tower operation: how many times it ran and its
+ * latency percentiles in nanoseconds. A percentile is the upper bound of
+ * the histogram bucket that holds it, so it is at most 12.5% too high.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerLatency {
+    private final long count;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    /**
+     * Create the measures of an operation.
+     * @param count how many times it ran
+     * @param meanNanos the mean latency
+     * @param p50Nanos the median latency
+     * @param p99Nanos the 99th percentile
+     * @param p999Nanos the 99.9th percentile
+     * @param maxNanos the largest latency
+     */
+    @ConstructorProperties({"count", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+    public TowerLatency(long count, long meanNanos, long p50Nanos, long p99Nanos,
+                        long p999Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return how many times the operation ran
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds
+     */
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * @return the median latency in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * @return the 99th percentile of the latency in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * @return the 99.9th percentile of the latency in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * @return the largest latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + " mean=" + meanNanos + "ns p50=" + p50Nanos + "ns p99="
+               + p99Nanos + "ns p999=" + p999Nanos + "ns max=" + maxNanos + "ns";
+    }
+}
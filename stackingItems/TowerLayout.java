@@ -0,0 +1,239 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import static java.lang.Math.*;
+
+/**
+ * Pixel layout of a tower inside an image: where the walls, the base, the
+ * centimeter marks and every item go for a given scale and viewport.
+ * TowerGUI uses it to draw on the Canvas and TowerRenderer to draw into
+ * offscreen images, so both give the same picture.
+ * A layout never changes after it is created and can be shared by threads.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerLayout {
+    // Pixels
+    public static final int MARGIN_LEFT = 40;
+    public static final int MARGIN_BOTTOM = 15;
+    public static final int MARGIN_TOP = 10;
+    public static final int MARGIN_RIGHT = 10;
+
+    public static final int MARK_WIDTH = 5;
+    public static final int MARK_HEIGHT = 2;
+
+    public static final int WALL_THICKNESS = 2;
+
+    private final int towerWidth;
+    private final int maxHeight;
+    private final int scale;
+    private final int viewBottom;
+    private final int imageWidth;
+    private final int imageHeight;
+
+    /**
+     * Create the layout of a tower.
+     * @param towerWidth logical width of the tower in cm
+     * @param maxHeight maximum height of the tower in cm
+     * @param scale pixels per cm
+     * @param viewBottom lowest cm shown at the bottom of the image
+     * @param imageWidth width of the image in pixels
+     * @param imageHeight height of the image in pixels
+     */
+    public TowerLayout(int towerWidth, int maxHeight, int scale, int viewBottom,
+                       int imageWidth, int imageHeight) {
+        this.towerWidth = towerWidth;
+        this.maxHeight = maxHeight;
+        this.scale = scale;
+        this.viewBottom = viewBottom;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    /**
+     * Calculate the largest scale that fits a whole tower in an image.
+     * Takes the minimum of horizontal and vertical scales, and ensures
+     * it is at least minScale.
+     * @param towerWidth logical width of the tower in cm
+     * @param maxHeight maximum height of the tower in cm
+     * @param imageWidth width of the image in pixels
+     * @param imageHeight height of the image in pixels
+     * @param minScale the smallest scale allowed
+     * @return the scale in pixels per cm
+     */
+    public static int fitScale(int towerWidth, int maxHeight, int imageWidth,
+                               int imageHeight, int minScale) {
+        if (towerWidth <= 0 || maxHeight <= 0) {
+            return minScale;
+        }
+        int scaleW = availableWidth(imageWidth) / towerWidth;
+        int scaleH = availableHeight(imageHeight) / maxHeight;
+        return max(minScale, min(scaleW, scaleH));
+    }
+
+    /**
+     * @param imageWidth width of the image in pixels
+     * @return the pixels between the left and right margins
+     */
+    public static int availableWidth(int imageWidth) {
+        return imageWidth - MARGIN_LEFT - MARGIN_RIGHT;
+    }
+
+    /**
+     * @param imageHeight height of the image in pixels
+     * @return the pixels between the top and bottom margins
+     */
+    public static int availableHeight(int imageHeight) {
+        return imageHeight - MARGIN_TOP - MARGIN_BOTTOM;
+    }
+
+    /**
+     * @return pixels per cm
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return lowest cm shown at the bottom of the image
+     */
+    public int getViewBottom() {
+        return viewBottom;
+    }
+
+    /**
+     * Check if the tower is as wide as the image allows.
+     * @return true if the walls fit between the margins
+     */
+    public boolean fitsWidth() {
+        return towerPixelWidth() <= availableWidth(imageWidth);
+    }
+
+    /**
+     * @return how many cm of the tower the image shows
+     */
+    public int visibleHeight() {
+        return availableHeight(imageHeight) / scale;
+    }
+
+    /**
+     * @return the first cm above the image (the top of the viewport, exclusive)
+     */
+    public int viewTop() {
+        return viewBottom + visibleHeight() + 1;
+    }
+
+    /**
+     * @return the highest cm inside the image, never above maxHeight
+     */
+    public int topCm() {
+        return min(maxHeight, viewTop());
+    }
+
+    /**
+     * @return the x of the left edge of the tower (inside the left wall)
+     */
+    public int leftX() {
+        return MARGIN_LEFT;
+    }
+
+    /**
+     * @return the y of the bottom of the viewport
+     */
+    public int baseY() {
+        return imageHeight - MARGIN_BOTTOM;
+    }
+
+    /**
+     * @return the width of the tower in pixels
+     */
+    public int towerPixelWidth() {
+        return towerWidth * scale;
+    }
+
+    /**
+     * @param item an item of the tower, with its base position up to date
+     * @return the y of the top edge of the item
+     */
+    public int itemY(Item item) {
+        return baseY() - (item.getTopPosition() - viewBottom) * scale;
+    }
+
+    /**
+     * @param item an item of the tower
+     * @return the x of the left edge of the item, centered in the tower
+     */
+    public int itemX(Item item) {
+        return leftX() + (towerPixelWidth() - item.getDiameter() * scale) / 2;
+    }
+
+    /**
+     * Get the rectangles that draw an item: the left wall, right wall and
+     * bottom of a cup (its walls are 1 cm thick), or the body of a lid.
+     * @param item an item of the tower, with its base position up to date
+     * @return the rectangles, in pixels
+     */
+    public ArrayList<Rectangle> itemParts(Item item) {
+        ArrayList<Rectangle> parts = new ArrayList<Rectangle>(3);
+        int x = itemX(item);
+        int y = itemY(item);
+        int pixelWidth = item.getDiameter() * scale;
+        int pixelHeight = item.getHeight() * scale;
+        if (item instanceof Cup) {
+            parts.add(new Rectangle(x, y, scale, pixelHeight));
+            parts.add(new Rectangle(x + pixelWidth - scale, y, scale, pixelHeight));
+            parts.add(new Rectangle(x, y + pixelHeight - scale, pixelWidth, scale));
+        } else {
+            parts.add(new Rectangle(x, y, pixelWidth, pixelHeight));
+        }
+        return parts;
+    }
+
+    /**
+     * Get the rectangles of the tower walls (left, right), base, and
+     * centimeter tick marks. Only the part inside the viewport is
+     * included; the base is only visible when the viewport is at the bottom.
+     * @return the rectangles, in pixels
+     */
+    public ArrayList<Rectangle> structure() {
+        ArrayList<Rectangle> parts = new ArrayList<Rectangle>();
+        int towerPixelHeight = (topCm() - viewBottom) * scale;
+        int baseY = baseY();
+        int leftX = leftX();
+
+        // Left wall
+        parts.add(new Rectangle(leftX - WALL_THICKNESS, baseY - towerPixelHeight,
+                                WALL_THICKNESS, towerPixelHeight));
+
+        // Right wall
+        parts.add(new Rectangle(leftX + towerPixelWidth(), baseY - towerPixelHeight,
+                                WALL_THICKNESS, towerPixelHeight));
+
+        // Base
+        if (viewBottom == 0) {
+            parts.add(new Rectangle(leftX - WALL_THICKNESS, baseY,
+                                    towerPixelWidth() + 2 * WALL_THICKNESS, WALL_THICKNESS));
+        }
+
+        // Marks
+        for (int cm = max(1, viewBottom); cm <= topCm(); cm++) {
+            int markY = baseY - ((cm - viewBottom) * scale);
+            parts.add(new Rectangle(leftX - WALL_THICKNESS - MARK_WIDTH, markY,
+                                    MARK_WIDTH, MARK_HEIGHT));
+        }
+        return parts;
+    }
+
+    /**
+     * Paint the structure of the tower in black.
+     * @param g the graphics to paint on
+     */
+    public void paintStructure(Graphics2D g) {
+        g.setColor(Color.black);
+        for (Rectangle part : structure()) {
+            g.fill(part);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Durable write-ahead log of the changes of a Tower.
+ * Every change is appended as a fixed-width record of 16 bytes to a
+ * memory-mapped file: a header int with the kind in its high byte and the
+ * RGB color in the low three bytes, the id, a stack index and a checksum
+ * of the other three. The file header is 16 bytes too, so every record is
+ * 16-byte aligned and never crosses a disk sector or a page: the disk
+ * writes each record whole or not at all. The header is written last and
+ * the checksum covers it, so the log ends at the first record whose header
+ * is zero or whose checksum does not match, such as a record torn by a
+ * crash. Opening the log clears every header after that record, so later
+ * appends never run into stale records.
+ *
+ * <p>Appends only write to the mapping. The records of the last group
+ * are forced to disk once every groupSize records (group commit), on
+ * commit() and on close(), so a crash loses at most one group.</p>
+ *
+ * <p>replay(tower) rebuilds a tower in one pass over the records. Pushes,
+ * removals and inserts are applied to a plain list, without computing
+ * positions, and the store is loaded once at the end. Stack indexes are
+ * renumbered lazily, only from the lowest index that moved and only when a
+ * removal needs one of them, so a push or a pop costs O(1) and a change
+ * below the top costs what it costs on an ArrayItemStore. An order or a
+ * reverse reorders the list with the rules of the tower, computing only
+ * the positions it needs to decide what fits. An undone reordering is a
+ * window record followed by one place record per item put back in it, so
+ * it costs what moved, not the whole stack. A record of unknown kind,
+ * a removal of a missing item or an insert past the top is rejected.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerLog implements Closeable {
+    static final byte PUSH_CUP = 1;
+    static final byte PUSH_LID = 2;
+    static final byte REMOVE_CUP = 3;
+    static final byte REMOVE_LID = 4;
+    static final byte INSERT_CUP = 5;
+    static final byte INSERT_LID = 6;
+    static final byte ORDER = 7;
+    static final byte REVERSE = 8;
+    static final byte RESET = 9;      // the stack was emptied, pushes follow
+    static final byte WINDOW = 10;    // id: first index, index: items kept above; places follow
+    static final byte PLACE_CUP = 11;
+    static final byte PLACE_LID = 12;
+
+    private static final int MAGIC = 0x54574C47;   // "TWLG"
+    private static final int HEADER = 16;
+    private static final int RECORD = 16;
+    private static final int INITIAL_RECORDS = 1 << 16;
+
+    private final FileChannel channel;
+    private final int groupSize;
+    private MappedByteBuffer buffer;
+    private int position;      // where the next record goes
+    private int committed;     // records before it are on disk
+
+    /**
+     * Open a log, creating the file if it does not exist. New records go
+     * after the ones already in it.
+     * @param file the log file
+     * @param groupSize how many records are appended between two forces to disk
+     * @throws IOException if the file cannot be opened or is not a tower log
+     */
+    public TowerLog(Path file, int groupSize) throws IOException {
+        if (groupSize <= 0) {
+            throw new IllegalArgumentException("El grupo debe tener al menos un registro");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.groupSize = groupSize;
+        long length = channel.size();
+        map(Math.max(length, HEADER + (long) INITIAL_RECORDS * RECORD));
+        if (length == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, RECORD);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != RECORD) {
+            channel.close();
+            throw new IOException("No es un registro de torre: " + file);
+        }
+        position = HEADER;
+        while (position + RECORD <= buffer.capacity() && isWhole(position)) {
+            position += RECORD;
+        }
+        int cleared = position;   // past the last record cleared
+        for (int at = position; at + RECORD <= buffer.capacity(); at += RECORD) {
+            if (buffer.getInt(at) != 0) {
+                buffer.putInt(at, 0);   // torn, or written after a torn one
+                cleared = at + RECORD;
+            }
+        }
+        committed = (length == 0) ? 0 : position;   // a new header must be written too
+        if (cleared > position) {
+            buffer.force(position, cleared - position);
+        }
+    }
+
+    /**
+     * @return the number of records in the log
+     */
+    public int size() {
+        return (position - HEADER) / RECORD;
+    }
+
+    /**
+     * Force every appended record to disk.
+     */
+    public void commit() {
+        if (committed < position) {
+            buffer.force(committed, position - committed);   // only the pages of the group
+            committed = position;
+        }
+    }
+
+    /**
+     * Commit and close the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    /**
+     * Rebuild the logged tower into an empty tower. The tower does not
+     * log while replaying; attach this log with setLog afterwards to keep
+     * appending to it.
+     * @param tower an empty tower with the width and maxHeight of the logged one
+     * @throws IOException if a record has an unknown kind, removes an item
+     *         that is not in the stack or inserts past its top
+     */
+    public void replay(Tower tower) throws IOException {
+        ArrayList<Item> items = new ArrayList<Item>();
+        IdIndex<Item> cups = new IdIndex<Item>();
+        IdIndex<Item> lids = new IdIndex<Item>();
+        int numbered = 0;   // the items below it have their stack index right
+        ArrayList<Item> above = null;   // items over an open window, put back when it closes
+        for (int at = HEADER; at < position; at += RECORD) {
+            int header = buffer.getInt(at);
+            int id = buffer.getInt(at + 4);
+            byte kind = (byte) (header >>> 24);
+            if (above != null && kind != PLACE_CUP && kind != PLACE_LID) {
+                items.addAll(above);
+                above = null;
+            }
+            switch (kind) {
+                case PUSH_CUP:
+                case PUSH_LID:
+                    Item pushed = create(kind == PUSH_CUP, id, header);
+                    pushed.setStackIndex(items.size());
+                    if (numbered == items.size()) {
+                        numbered++;
+                    }
+                    items.add(pushed);
+                    ((kind == PUSH_CUP) ? cups : lids).put(id, pushed);
+                    break;
+                case REMOVE_CUP:
+                case REMOVE_LID:
+                    Item removed = ((kind == REMOVE_CUP) ? cups : lids).remove(id);
+                    if (removed == null) {
+                        throw corrupt(at, "quita un elemento que no está en la torre");
+                    }
+                    if (removed.getStackIndex() >= numbered) {
+                        numbered = renumber(items, numbered);
+                    }
+                    items.remove(removed.getStackIndex());
+                    numbered = Math.min(numbered, removed.getStackIndex());
+                    break;
+                case INSERT_CUP:
+                case INSERT_LID:
+                    int index = buffer.getInt(at + 8);
+                    if (index < 0 || index > items.size()) {
+                        throw corrupt(at, "inserta fuera de la torre");
+                    }
+                    Item inserted = create(kind == INSERT_CUP, id, header);
+                    inserted.setStackIndex(index);
+                    items.add(index, inserted);
+                    ((kind == INSERT_CUP) ? cups : lids).put(id, inserted);
+                    numbered = Math.min(numbered, index);   // the items above it moved up
+                    break;
+                case ORDER:
+                case REVERSE:
+                    items = tower.reordered(items, kind == ORDER);
+                    cups.clear();
+                    lids.clear();
+                    for (Item item : items) {
+                        ((item instanceof Cup) ? cups : lids).put(item.getId(), item);
+                    }
+                    numbered = renumber(items, 0);
+                    break;
+                case WINDOW:
+                    int kept = buffer.getInt(at + 8);
+                    if (id < 0 || kept < 0 || (long) id + kept > items.size()) {
+                        throw corrupt(at, "abre una ventana fuera de la torre");
+                    }
+                    above = new ArrayList<Item>(items.subList(items.size() - kept, items.size()));
+                    items.subList(id, items.size()).clear();
+                    numbered = Math.min(numbered, id);
+                    break;
+                case PLACE_CUP:
+                case PLACE_LID:
+                    if (above == null) {
+                        throw corrupt(at, "coloca un elemento fuera de una ventana");
+                    }
+                    IdIndex<Item> byId = (kind == PLACE_CUP) ? cups : lids;
+                    Item placed = byId.get(id);
+                    if (placed == null) {   // dropped by the reordering
+                        placed = create(kind == PLACE_CUP, id, header);
+                        placed.setStackIndex(items.size());
+                        byId.put(id, placed);
+                    }
+                    items.add(placed);
+                    break;
+                case RESET:
+                    items.clear();
+                    cups.clear();
+                    lids.clear();
+                    numbered = 0;
+                    break;
+                default:
+                    throw corrupt(at, "tiene un tipo desconocido " + kind);
+            }
+        }
+        if (above != null) {
+            items.addAll(above);
+        }
+        tower.restore(items);
+    }
+
+    // ---- Appends, called by TowerHistory ----
+
+    /**
+     * Append an item put on the top of the stack.
+     * @param item the cup or lid
+     */
+    void appendPush(Item item) {
+        append(item instanceof Cup ? PUSH_CUP : PUSH_LID, item.getId(), 0, item.getColor());
+    }
+
+    /**
+     * Append an item put at a stack index below the top.
+     * @param index the stack index it got
+     * @param item the cup or lid
+     */
+    void appendInsert(int index, Item item) {
+        append(item instanceof Cup ? INSERT_CUP : INSERT_LID, item.getId(), index, item.getColor());
+    }
+
+    /**
+     * Append a removed item.
+     * @param item the cup or lid
+     */
+    void appendRemove(Item item) {
+        append(item instanceof Cup ? REMOVE_CUP : REMOVE_LID, item.getId(), 0, Color.black);
+    }
+
+    /**
+     * Append an order or a reverse of the tower.
+     * @param kind ORDER or REVERSE
+     */
+    void appendReorder(byte kind) {
+        append(kind, 0, 0, Color.black);
+    }
+
+    /**
+     * Append the start of an undone reordering: the items from a stack
+     * index up are replaced by the places that follow, except the top ones.
+     * @param from the first stack index that changed
+     * @param kept how many items at the top did not move
+     */
+    void appendWindow(int from, int kept) {
+        append(WINDOW, from, kept, Color.black);
+    }
+
+    /**
+     * Append the next item of an open window.
+     * @param item the cup or lid, with its color in case it was dropped
+     */
+    void appendPlace(Item item) {
+        append(item instanceof Cup ? PLACE_CUP : PLACE_LID, item.getId(), 0, item.getColor());
+    }
+
+    /**
+     * Append a whole new stack: a reset followed by a push of every item.
+     * @param items the new stack, from base to top
+     */
+    void appendStack(ArrayList<Item> items) {
+        append(RESET, 0, 0, Color.black);
+        for (Item item : items) {
+            appendPush(item);
+        }
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Write a record at the end of the log, growing the mapping if it is full.
+     * @param kind the kind of record
+     * @param id the id of the item, 0 if none
+     * @param index the stack index, 0 if none
+     * @param color the color of the item
+     */
+    private void append(byte kind, int id, int index, Color color) {
+        if (position + RECORD > buffer.capacity()) {
+            commit();
+            try {
+                map(2L * buffer.capacity());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int header = (kind << 24) | (color.getRGB() & 0xFFFFFF);
+        buffer.putInt(position + 4, id);
+        buffer.putInt(position + 8, index);
+        buffer.putInt(position + 12, checksum(header, id, index));
+        buffer.putInt(position, header);   // last: marks the record as written
+        position += RECORD;
+        if ((position - committed) / RECORD >= groupSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Check if a record was written whole.
+     * @param at the offset of the record
+     * @return true if its header is set and its checksum matches
+     */
+    private boolean isWhole(int at) {
+        int header = buffer.getInt(at);
+        return header != 0
+               && buffer.getInt(at + 12) == checksum(header, buffer.getInt(at + 4), buffer.getInt(at + 8));
+    }
+
+    /**
+     * Mix the fields of a record into a checksum, so that a change in any
+     * of their bits changes it.
+     * @param header the header int
+     * @param id the id
+     * @param index the stack index
+     * @return the checksum
+     */
+    private static int checksum(int header, int id, int index) {
+        int h = header * 0x9E3779B1;
+        h = Integer.rotateLeft(h ^ id, 13) * 0x85EBCA6B;
+        h = Integer.rotateLeft(h ^ index, 13) * 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Map the first bytes of the file, growing it if needed.
+     * @param length how many bytes to map
+     * @throws IOException if the file cannot be mapped
+     */
+    private void map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("El registro de la torre está lleno");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    /**
+     * Create the item of a record.
+     * @param cup true for a cup, false for a lid
+     * @param id the id
+     * @param header the header of the record, with the RGB color
+     * @return the new item
+     */
+    private static Item create(boolean cup, int id, int header) {
+        Color color = new Color(header & 0xFFFFFF);
+        return cup ? new Cup(id, color) : new Lid(id, color);
+    }
+
+    /**
+     * Renumber the stack indexes of the items from an index to the top.
+     * @param items the list
+     * @param from the first index to renumber
+     * @return the size of the list, below which every index is now right
+     */
+    private static int renumber(ArrayList<Item> items, int from) {
+        for (int k = from; k < items.size(); k++) {
+            items.get(k).setStackIndex(k);
+        }
+        return items.size();
+    }
+
+    /**
+     * Build the error of a record that cannot be replayed.
+     * @param at the offset of the record in the file
+     * @param reason what is wrong with it
+     * @return the exception to throw
+     */
+    private static IOException corrupt(int at, String reason) {
+        return new IOException("El registro " + (at - HEADER) / RECORD + " " + reason);
+    }
+}
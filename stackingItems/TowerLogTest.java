@@ -0,0 +1,234 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the TowerLog class.
+ * Logs headless towers to a temporary file and replays them.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerLogTest
+{
+    private Path file;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a temporary file name for the log.
+     */
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("tower", ".log");
+        Files.delete(file);
+    }
+
+    /**
+     * Tears down the test fixture.
+     * Deletes the log file.
+     */
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test a replay gives the same stack, with the same colors.
+     */
+    @Test
+    public void testReplayRestoresStackAndColors() throws IOException
+    {
+        Tower tower = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 8)) {
+            tower.setLog(log);
+            tower.pushCup(4);
+            tower.pushLid(4);
+            tower.pushCup(2);
+            tower.pushCup(2);   // fails, not logged
+            tower.popCup();
+            tower.pushCup(3);
+            tower.removeLid(4);
+            assertEquals(6, log.size());
+        }
+
+        Tower replayed = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 8)) {
+            assertEquals(6, log.size());
+            log.replay(replayed);
+        }
+        assertArrayEquals(tower.stackingStack(), replayed.stackingStack());
+        assertEquals(tower.height(), replayed.height());
+        List<Item> expected = tower.getStack();
+        List<Item> actual = replayed.getStack();
+        for (int k = 0; k < expected.size(); k++) {
+            assertEquals(expected.get(k).getColor(), actual.get(k).getColor());
+        }
+    }
+
+    /**
+     * Test reopening a log appends after the records already in it.
+     */
+    @Test
+    public void testReopenAppends() throws IOException
+    {
+        Tower tower = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 1)) {
+            tower.setLog(log);
+            tower.pushCup(1);
+        }
+        try (TowerLog log = new TowerLog(file, 1)) {
+            tower.setLog(log);
+            tower.pushLid(1);
+        }
+        Tower replayed = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 1)) {
+            log.replay(replayed);
+        }
+        assertArrayEquals(new String[]{"cup", "1", "lid", "1"}, replayed.stackingStack());
+    }
+
+    /**
+     * Test a file that is not a log is rejected.
+     */
+    @Test
+    public void testRejectsOtherFiles() throws IOException
+    {
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> new TowerLog(file, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TowerLog(file, 0));
+    }
+
+    /**
+     * Test a removal of an item that is not in the stack and a record of
+     * unknown kind are rejected by replay.
+     */
+    @Test
+    public void testReplayRejectsBadRecords() throws IOException
+    {
+        try (TowerLog log = new TowerLog(file, 1)) {
+            log.appendPush(new Cup(3, Color.red));
+            log.appendRemove(new Cup(5, Color.red));
+            assertThrows(IOException.class, () -> log.replay(Tower.headless(10, 30)));
+        }
+        Files.delete(file);
+        try (TowerLog log = new TowerLog(file, 1)) {
+            log.appendPush(new Cup(3, Color.red));
+            log.appendReorder((byte) 42);
+            assertThrows(IOException.class, () -> log.replay(Tower.headless(10, 30)));
+        }
+    }
+
+    /**
+     * Test a record whose id did not reach the disk ends the log, and the
+     * records after it are dropped instead of replayed.
+     */
+    @Test
+    public void testTornRecordEndsTheLog() throws IOException
+    {
+        Tower tower = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 1)) {
+            tower.setLog(log);
+            tower.pushCup(4);
+            tower.pushCup(3);
+            tower.pushLid(3);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 9}), 16 + 16 + 4);   // id of the second record
+        }
+        Tower replayed = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 1)) {
+            assertEquals(1, log.size());
+            log.replay(replayed);
+            replayed.setLog(log);
+            replayed.pushLid(4);
+        }
+        assertArrayEquals(new String[]{"cup", "4", "lid", "4"}, replayed.stackingStack());
+        Tower reopened = Tower.headless(10, 30);
+        try (TowerLog log = new TowerLog(file, 1)) {
+            assertEquals(2, log.size());
+            log.replay(reopened);
+        }
+        assertArrayEquals(new String[]{"cup", "4", "lid", "4"}, reopened.stackingStack());
+    }
+
+    /**
+     * Test undoing and redoing an order only logs what moved, and the log
+     * still replays to the same tower.
+     */
+    @Test
+    public void testUndoneOrderLogsOnlyTheWindow() throws IOException
+    {
+        Tower tower = Tower.headless(200, 100000);
+        try (TowerLog log = new TowerLog(file, 64)) {
+            tower.setLog(log);
+            for (int id = 100; id >= 3; id--) {
+                tower.pushCup(id);
+            }
+            tower.pushCup(1);
+            tower.pushCup(2);
+            tower.orderTower();   // only the two cups at the top move
+            int before = log.size();
+            tower.undo();
+            assertEquals(before + 3, log.size());   // the window and two places
+            tower.redo();
+            assertEquals(before + 4, log.size());
+            tower.undo();
+        }
+        Tower replayed = Tower.headless(200, 100000);
+        try (TowerLog log = new TowerLog(file, 64)) {
+            log.replay(replayed);
+        }
+        assertArrayEquals(tower.stackingStack(), replayed.stackingStack());
+        assertEquals(tower.height(), replayed.height());
+    }
+
+    /**
+     * Test a long random run with orders, undo and redo replays to the
+     * same tower, and makes the log grow past its first mapping.
+     */
+    @Test
+    public void testReplayLongRun() throws IOException
+    {
+        Tower tower = Tower.headless(100, 100000, new TreeItemStore());
+        Random random = new Random(5);
+        try (TowerLog log = new TowerLog(file, 1024)) {
+            tower.setLog(log);
+            for (int step = 0; step < 100000; step++) {
+                int id = 1 + random.nextInt(300);
+                switch (random.nextInt(20)) {
+                    case 0: tower.orderTower(); break;
+                    case 1: tower.reverseTower(); break;
+                    case 2: case 3: tower.undo(); break;
+                    case 4: tower.redo(); break;
+                    case 5: case 6: tower.removeCup(id); break;
+                    case 7: tower.removeLid(id); break;
+                    case 8: tower.popLid(); break;
+                    case 9: tower.popCup(); break;
+                    case 10: case 11: case 12: case 13: case 14: tower.pushLid(id); break;
+                    default: tower.pushCup(id);
+                }
+            }
+            assertTrue(log.size() > 1 << 16);
+        }
+
+        Tower replayed = Tower.headless(100, 100000);
+        try (TowerLog log = new TowerLog(file, 1024)) {
+            log.replay(replayed);
+        }
+        assertArrayEquals(tower.stackingStack(), replayed.stackingStack());
+        assertEquals(tower.height(), replayed.height());
+    }
+}
@@ -0,0 +1,262 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the tower operations, published
+ * through the platform MBean server as a TowerMetricsMXBean.
+ *
+ * <p>An operation is measured with a pair of calls:</p>
+ * <pre>
+ *     long start = TowerMetrics.start();
+ *     ...
+ *     TowerMetrics.stop(TowerMetrics.Operation.PUSH_CUP, start);
+ * </pre>
+ * <p>While measuring is off, start() only reads a flag and stop() only
+ * compares a long, so the calls can stay in every hot path. Measuring
+ * is off by default; start the JVM with {@code -Dtower.metrics=true} or
+ * turn it on through JMX.</p>
+ *
+ * <p>Each histogram has eight buckets per power of two of nanoseconds,
+ * counted with atomic adds, so recording never allocates nor locks.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerMetrics implements TowerMetricsMXBean {
+
+    /**
+     * The measured operations: the public Tower methods, the rebuild and
+     * position passes of the model, and the refresh of the GUI.
+     */
+    public enum Operation {
+        PUSH_CUP, PUSH_LID, POP_CUP, POP_LID, REMOVE_CUP, REMOVE_LID,
+        ORDER_TOWER, REVERSE_TOWER, UNDO, REDO, APPLY_ALL,
+        HEIGHT, LIDED_CUPS, STACKING_STACK,
+        REBUILD_TOWER, RECALCULATE_POSITIONS, GUI_REFRESH
+    }
+
+    private static final long OFF = Long.MIN_VALUE;   // start() while measuring is off
+    private static final TowerMetrics INSTANCE = new TowerMetrics();
+    private static volatile boolean enabled = Boolean.getBoolean("tower.metrics");
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                    new ObjectName("stackingcups:type=TowerMetrics"));
+        } catch (JMException | SecurityException e) {
+            // Already registered by another class loader, or not allowed: measures stay local
+        }
+    }
+
+    private final Histogram[] histograms;
+
+    /**
+     * Create the metrics, one histogram per operation.
+     */
+    private TowerMetrics() {
+        Operation[] operations = Operation.values();
+        histograms = new Histogram[operations.length];
+        for (int k = 0; k < histograms.length; k++) {
+            histograms[k] = new Histogram();
+        }
+    }
+
+    /**
+     * Get the metrics of this JVM.
+     * @return the single instance
+     */
+    public static TowerMetrics getMetrics() {
+        return INSTANCE;
+    }
+
+    /**
+     * Mark the start of an operation.
+     * @return the time to hand to stop(), or a marker if measuring is off
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : OFF;
+    }
+
+    /**
+     * Record an operation that started at start.
+     * @param operation what was measured
+     * @param start the value returned by start()
+     */
+    static void stop(Operation operation, long start) {
+        if (start != OFF) {
+            INSTANCE.histograms[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Get the measures of one operation.
+     * @param operation the operation
+     * @return its count and latency percentiles
+     */
+    public TowerLatency getLatency(Operation operation) {
+        return histograms[operation.ordinal()].summary();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        TowerMetrics.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, TowerLatency> getLatencies() {
+        Map<String, TowerLatency> latencies = new LinkedHashMap<String, TowerLatency>();
+        for (Operation operation : Operation.values()) {
+            TowerLatency latency = getLatency(operation);
+            if (latency.getCount() > 0) {
+                latencies.put(operation.name(), latency);
+            }
+        }
+        return latencies;
+    }
+
+    @Override
+    public long getTotalCount() {
+        long total = 0;
+        for (Histogram histogram : histograms) {
+            total += histogram.count();
+        }
+        return total;
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Log-linear histogram of latencies in nanoseconds. Values below 8 have
+     * a bucket each; above, every power of two is split in 8 buckets.
+     */
+    private static class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS) * SUB);
+        private final AtomicLong total = new AtomicLong();   // sum of the latencies
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Count one latency.
+         * @param nanos the latency
+         */
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets.getAndIncrement(bucketOf(nanos));
+            total.getAndAdd(nanos);
+            if (nanos > max.get()) {
+                max.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        /**
+         * @return the number of latencies counted
+         */
+        long count() {
+            long count = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                count += buckets.get(b);
+            }
+            return count;
+        }
+
+        /**
+         * Forget every latency.
+         */
+        void reset() {
+            for (int b = 0; b < buckets.length(); b++) {
+                buckets.set(b, 0);
+            }
+            total.set(0);
+            max.set(0);
+        }
+
+        /**
+         * Read the count, mean and percentiles in one pass over the buckets.
+         * Recording may go on meanwhile, so they can be off by the latencies
+         * counted during the read.
+         * @return the summary
+         */
+        TowerLatency summary() {
+            long[] counts = new long[buckets.length()];
+            long count = 0;
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] = buckets.get(b);
+                count += counts[b];
+            }
+            if (count == 0) {
+                return new TowerLatency(0, 0, 0, 0, 0, 0);
+            }
+            long maxNanos = max.get();
+            return new TowerLatency(count, total.get() / count,
+                                    percentile(counts, count, 0.5, maxNanos),
+                                    percentile(counts, count, 0.99, maxNanos),
+                                    percentile(counts, count, 0.999, maxNanos),
+                                    maxNanos);
+        }
+
+        /**
+         * Find a percentile in the bucket counts.
+         * @param counts the count of each bucket
+         * @param count the sum of the counts
+         * @param fraction the percentile, between 0 and 1
+         * @param maxNanos the largest latency, which no bound may exceed
+         * @return the upper bound of the bucket that holds it
+         */
+        private static long percentile(long[] counts, long count, double fraction, long maxNanos) {
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    return Math.min(upperBound(b), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * @param nanos a latency, not negative
+         * @return the bucket that counts it
+         */
+        static int bucketOf(long nanos) {
+            if (nanos < SUB) {
+                return (int) nanos;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int mantissa = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB - 1);
+            return (exponent - SUB_BITS + 1) * SUB + mantissa;
+        }
+
+        /**
+         * @param bucket a bucket
+         * @return the largest latency it counts
+         */
+        static long upperBound(int bucket) {
+            if (bucket < SUB) {
+                return bucket;
+            }
+            int shift = bucket / SUB - 1;
+            long lower = (long) (SUB + bucket % SUB) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Map;
+
+/**
+ * Management interface of the tower metrics, published in the platform
+ * MBean server as {@code stackingcups:type=TowerMetrics}.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public interface TowerMetricsMXBean {
+
+    /**
+     * @return true if operations are being measured
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop measuring. Stopped, each operation costs one read of a flag.
+     * @param enabled true to measure
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Get the measures of every operation that ran at least once.
+     * @return the latency of each operation, by name
+     */
+    Map<String, TowerLatency> getLatencies();
+
+    /**
+     * @return the number of measured operations of every kind
+     */
+    long getTotalCount();
+
+    /**
+     * Forget every measure taken so far.
+     */
+    void reset();
+}
@@ -0,0 +1,177 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Unit tests for the TowerMetrics class.
+ * Checks what is counted with measuring on and off, the order of the
+ * percentiles and that the measures can be read through JMX.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerMetricsTest
+{
+    private TowerMetrics metrics;
+    private Tower tower;
+
+    /**
+     * Sets up the test fixture.
+     * Clears the metrics and creates a headless tower with width=10 and maxHeight=100.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        metrics = TowerMetrics.getMetrics();
+        metrics.setEnabled(false);
+        metrics.reset();
+        tower = Tower.headless(10, 100);
+    }
+
+    /**
+     * Tears down the test fixture.
+     * Turns measuring off again, since the metrics are shared by the JVM.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    /**
+     * Test nothing is counted while measuring is off.
+     */
+    @Test
+    public void testDisabledCountsNothing()
+    {
+        tower.pushCup(3);
+        tower.popCup();
+        tower.orderTower();
+        assertEquals(0, metrics.getTotalCount());
+        assertTrue(metrics.getLatencies().isEmpty());
+    }
+
+    /**
+     * Test each operation is counted once per call, failed calls included,
+     * and the model passes under it are counted too.
+     */
+    @Test
+    public void testCountsEachOperation()
+    {
+        metrics.setEnabled(true);
+        tower.pushCup(3);
+        tower.pushCup(3);   // duplicate
+        tower.pushLid(3);
+        tower.reverseTower();
+        tower.lidedCups();
+        metrics.setEnabled(false);
+        tower.pushCup(5);
+
+        assertEquals(2, metrics.getLatency(TowerMetrics.Operation.PUSH_CUP).getCount());
+        assertEquals(1, metrics.getLatency(TowerMetrics.Operation.PUSH_LID).getCount());
+        assertEquals(1, metrics.getLatency(TowerMetrics.Operation.REVERSE_TOWER).getCount());
+        assertEquals(1, metrics.getLatency(TowerMetrics.Operation.REBUILD_TOWER).getCount());
+        assertEquals(1, metrics.getLatency(TowerMetrics.Operation.LIDED_CUPS).getCount());
+        assertTrue(metrics.getLatency(TowerMetrics.Operation.RECALCULATE_POSITIONS).getCount() > 0);
+        assertEquals(0, metrics.getLatency(TowerMetrics.Operation.POP_CUP).getCount());
+        assertFalse(metrics.getLatencies().containsKey("POP_CUP"));
+    }
+
+    /**
+     * Test a batch of removals costs a single position pass, whether it
+     * removes from the base up or from the top down, and the pass is only
+     * run when a position is read.
+     */
+    @Test
+    public void testBatchOfRemovalsCostsOnePositionPass()
+    {
+        for (boolean ascending : new boolean[]{true, false}) {
+            tower = Tower.headless(10, 100000);
+            ArrayList<TowerOp> ops = new ArrayList<TowerOp>();
+            for (int id = 200; id >= 1; id--) {
+                tower.pushCup(id);
+            }
+            for (int k = 0; k < 100; k++) {
+                ops.add(TowerOp.removeCup(ascending ? 200 - 2 * k : 2 + 2 * k));
+            }
+            metrics.reset();
+            metrics.setEnabled(true);
+            tower.applyAll(ops);
+            tower.height();   // the positions are recomputed here, once
+            assertTrue(tower.ok());
+            assertEquals(100, tower.getStack().size());
+            assertEquals(1, metrics.getLatency(TowerMetrics.Operation.RECALCULATE_POSITIONS).getCount());
+            metrics.setEnabled(false);
+        }
+    }
+
+    /**
+     * Test lidedCups after a removal below the top recomputes no position.
+     */
+    @Test
+    public void testLidedCupsAfterRemovalRecomputesNothing()
+    {
+        tower = Tower.headless(200, 100000);
+        for (int id = 50; id >= 1; id--) {
+            tower.pushCup(id);
+            if (id != 25) {
+                tower.pushLid(id);
+            }
+        }
+        assertEquals(49, tower.lidedCups().length);
+        metrics.setEnabled(true);
+        tower.removeCup(25);
+        assertEquals(49, tower.lidedCups().length);
+        assertEquals(0, metrics.getLatency(TowerMetrics.Operation.RECALCULATE_POSITIONS).getCount());
+    }
+
+    /**
+     * Test the percentiles never decrease and never pass the maximum.
+     */
+    @Test
+    public void testPercentilesAreOrdered()
+    {
+        metrics.setEnabled(true);
+        for (int id = 1; id <= 2000; id++) {
+            tower.pushLid(id % 50 + 1);
+            tower.popLid();
+        }
+        TowerLatency latency = metrics.getLatency(TowerMetrics.Operation.PUSH_LID);
+        assertEquals(2000, latency.getCount());
+        assertTrue(latency.getP50Nanos() <= latency.getP99Nanos());
+        assertTrue(latency.getP99Nanos() <= latency.getP999Nanos());
+        assertTrue(latency.getP999Nanos() <= latency.getMaxNanos());
+        assertTrue(latency.getMeanNanos() <= latency.getMaxNanos());
+    }
+
+    /**
+     * Test the measures are published in the platform MBean server.
+     */
+    @Test
+    public void testPublishedOverJmx() throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("stackingcups:type=TowerMetrics");
+        server.setAttribute(name, new Attribute("Enabled", true));
+        assertTrue(metrics.isEnabled());
+
+        tower.pushCup(2);
+        tower.stackingStack();
+
+        assertEquals(metrics.getTotalCount(), server.getAttribute(name, "TotalCount"));
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        CompositeData push = (CompositeData) latencies.get(new Object[]{"PUSH_CUP"}).get("value");
+        assertEquals(1L, push.get("count"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, metrics.getTotalCount());
+    }
+}
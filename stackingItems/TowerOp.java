@@ -0,0 +1,104 @@
+/**
+ * One mutating operation on a Tower, used by Tower.applyAll to run many
+ * operations as a single batch.
+ * Operations without an id (pops, order and reverse) keep id = 0.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerOp {
+
+    /**
+     * The kinds of operations a batch can hold, one per mutating Tower method.
+     */
+    public enum Kind {
+        PUSH_CUP, PUSH_LID, POP_CUP, POP_LID, REMOVE_CUP, REMOVE_LID, ORDER, REVERSE
+    }
+
+    private final Kind kind;
+    private final int id;
+
+    /**
+     * Create an operation.
+     * @param kind what the operation does
+     * @param id the id of the cup or lid, 0 if the kind has no id
+     */
+    public TowerOp(Kind kind, int id) {
+        this.kind = kind;
+        this.id = id;
+    }
+
+    /**
+     * @param id the id of the cup
+     * @return an operation that calls pushCup(id)
+     */
+    public static TowerOp pushCup(int id) {
+        return new TowerOp(Kind.PUSH_CUP, id);
+    }
+
+    /**
+     * @param id the id of the lid
+     * @return an operation that calls pushLid(id)
+     */
+    public static TowerOp pushLid(int id) {
+        return new TowerOp(Kind.PUSH_LID, id);
+    }
+
+    /**
+     * @return an operation that calls popCup()
+     */
+    public static TowerOp popCup() {
+        return new TowerOp(Kind.POP_CUP, 0);
+    }
+
+    /**
+     * @return an operation that calls popLid()
+     */
+    public static TowerOp popLid() {
+        return new TowerOp(Kind.POP_LID, 0);
+    }
+
+    /**
+     * @param id the id of the cup
+     * @return an operation that calls removeCup(id)
+     */
+    public static TowerOp removeCup(int id) {
+        return new TowerOp(Kind.REMOVE_CUP, id);
+    }
+
+    /**
+     * @param id the id of the lid
+     * @return an operation that calls removeLid(id)
+     */
+    public static TowerOp removeLid(int id) {
+        return new TowerOp(Kind.REMOVE_LID, id);
+    }
+
+    /**
+     * @return an operation that calls orderTower()
+     */
+    public static TowerOp orderTower() {
+        return new TowerOp(Kind.ORDER, 0);
+    }
+
+    /**
+     * @return an operation that calls reverseTower()
+     */
+    public static TowerOp reverseTower() {
+        return new TowerOp(Kind.REVERSE, 0);
+    }
+
+    /**
+     * @return what the operation does
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the id of the cup or lid, 0 if the kind has no id
+     */
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,172 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.IntStream;
+import javax.imageio.ImageIO;
+
+/**
+ * Offscreen renderer of towers: draws a tower into a BufferedImage, a PNG
+ * file or an SVG document without the Canvas, so it works with
+ * java.awt.headless=true. It uses the same TowerLayout as TowerGUI, so the
+ * pictures match what the Canvas shows. The scale is a whole number of
+ * pixels per cm, the largest that fits the tower in the image and never
+ * less than one. A tower whose maxHeight does not fit in the image even
+ * at one pixel per cm is cut at the top: the image shows its lowest cm,
+ * as the Canvas does before it is scrolled.
+ *
+ * <p>A renderer keeps no state between towers, so many towers can be
+ * rendered at the same time. exportAll spreads them over every core.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerRenderer {
+    private static final int MIN_SCALE = 1;
+
+    private final int imageWidth;
+    private final int imageHeight;
+
+    /**
+     * Create a renderer for images of the given size.
+     * @param imageWidth width of the images in pixels
+     * @param imageHeight height of the images in pixels
+     */
+    public TowerRenderer(int imageWidth, int imageHeight) {
+        if (imageWidth <= TowerLayout.MARGIN_LEFT + TowerLayout.MARGIN_RIGHT
+                || imageHeight <= TowerLayout.MARGIN_TOP + TowerLayout.MARGIN_BOTTOM) {
+            throw new IllegalArgumentException("La imagen es más pequeña que sus márgenes");
+        }
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    /**
+     * Draw a tower into a new image.
+     * @param tower the tower to draw
+     * @return the image, with a white background
+     */
+    public BufferedImage render(Tower tower) {
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight,
+                                                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, imageWidth, imageHeight);
+
+        TowerLayout layout = layout(tower);
+        layout.paintStructure(g);
+        for (Item item : tower.itemsBetween(0, layout.viewTop())) {
+            g.setColor(item.getColor());
+            for (Rectangle part : layout.itemParts(item)) {
+                g.fill(part);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draw a tower into a PNG file.
+     * @param tower the tower to draw
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writePng(Tower tower, File file) throws IOException {
+        if (!ImageIO.write(render(tower), "png", file)) {
+            throw new IOException("No hay un escritor de PNG disponible");
+        }
+    }
+
+    /**
+     * Draw a tower as an SVG document.
+     * @param tower the tower to draw
+     * @param out where the document is written
+     * @throws IOException if out fails
+     */
+    public void writeSvg(Tower tower, Appendable out) throws IOException {
+        TowerLayout layout = layout(tower);
+        out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(Integer.toString(imageWidth))
+           .append("\" height=\"").append(Integer.toString(imageHeight)).append("\">\n");
+        out.append("<rect width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n");
+        for (Rectangle part : layout.structure()) {
+            appendRect(out, part, Color.black);
+        }
+        for (Item item : tower.itemsBetween(0, layout.viewTop())) {
+            for (Rectangle part : layout.itemParts(item)) {
+                appendRect(out, part, item.getColor());
+            }
+        }
+        out.append("</svg>\n");
+    }
+
+    /**
+     * Export many towers in parallel, one file per tower named
+     * tower-&lt;index&gt;.png or tower-&lt;index&gt;.svg.
+     * @param towers the towers to export (none of them may change meanwhile)
+     * @param directory the directory of the files
+     * @param format "png" or "svg"
+     * @throws IOException if a file cannot be written
+     */
+    public void exportAll(List<Tower> towers, File directory, String format) throws IOException {
+        if (!format.equals("png") && !format.equals("svg")) {
+            throw new IllegalArgumentException("Formato no soportado: " + format);
+        }
+        try {
+            IntStream.range(0, towers.size()).parallel().forEach(k -> {
+                File file = new File(directory, "tower-" + k + "." + format);
+                try {
+                    if (format.equals("png")) {
+                        writePng(towers.get(k), file);
+                    } else {
+                        try (Writer out = Files.newBufferedWriter(file.toPath(),
+                                                                  StandardCharsets.UTF_8)) {
+                            writeSvg(towers.get(k), out);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Get the layout that fits the tower in the image, or shows its lowest
+     * cm at one pixel per cm if it is too tall.
+     * @param tower the tower to draw
+     * @return the layout
+     */
+    private TowerLayout layout(Tower tower) {
+        int scale = TowerLayout.fitScale(tower.getWidth(), tower.getMaxHeight(),
+                                         imageWidth, imageHeight, MIN_SCALE);
+        return new TowerLayout(tower.getWidth(), tower.getMaxHeight(), scale, 0,
+                               imageWidth, imageHeight);
+    }
+
+    /**
+     * Write one SVG rectangle.
+     * @param out where the rectangle is written
+     * @param part the rectangle in pixels
+     * @param color its fill color
+     * @throws IOException if out fails
+     */
+    private static void appendRect(Appendable out, Rectangle part, Color color) throws IOException {
+        out.append("<rect x=\"").append(Integer.toString(part.x))
+           .append("\" y=\"").append(Integer.toString(part.y))
+           .append("\" width=\"").append(Integer.toString(part.width))
+           .append("\" height=\"").append(Integer.toString(part.height))
+           .append("\" fill=\"").append(String.format("#%06x", color.getRGB() & 0xFFFFFF))
+           .append("\"/>\n");
+    }
+}
@@ -0,0 +1,143 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * Unit tests for the TowerRenderer class.
+ * Renders headless towers without opening any window.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerRendererTest
+{
+    private Tower tower;
+    private TowerRenderer renderer;
+
+    /**
+     * Sets up the test fixture.
+     * Creates a headless tower with width=10 and maxHeight=30 and a
+     * renderer of 300x300 pixels, the size of the Canvas.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        tower = Tower.headless(10, 30);
+        renderer = new TowerRenderer(300, 300);
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test the items are drawn where the layout puts them.
+     */
+    @Test
+    public void testRenderPutsItemsOnTheirLayout()
+    {
+        tower.pushCup(4);
+        tower.pushLid(4);
+        BufferedImage image = renderer.render(tower);
+        assertEquals(300, image.getWidth());
+
+        int scale = TowerLayout.fitScale(10, 30, 300, 300, 1);
+        TowerLayout layout = new TowerLayout(10, 30, scale, 0, 300, 300);
+        for (Item item : tower.getStack()) {
+            for (java.awt.Rectangle part : layout.itemParts(item)) {
+                int rgb = image.getRGB(part.x, part.y) & 0xFFFFFF;
+                assertEquals(item.getColor().getRGB() & 0xFFFFFF, rgb);
+            }
+        }
+        int wallX = layout.leftX() - TowerLayout.WALL_THICKNESS;
+        assertEquals(0, image.getRGB(wallX, layout.baseY() - 1) & 0xFFFFFF);
+    }
+
+    /**
+     * Test the SVG has the structure plus one rectangle per lid and three per cup.
+     */
+    @Test
+    public void testSvgRectangles() throws IOException
+    {
+        tower.pushCup(2);
+        tower.pushLid(2);
+        StringBuilder svg = new StringBuilder();
+        renderer.writeSvg(tower, svg);
+        int rects = svg.toString().split("<rect ", -1).length - 1;
+        int structure = 3 + 30; // walls, base and one mark per cm
+        assertEquals(1 + structure + 3 + 1, rects);
+        assertTrue(svg.toString().startsWith("<svg"));
+        assertTrue(svg.toString().trim().endsWith("</svg>"));
+    }
+
+    /**
+     * Test a tower taller than the image at one pixel per cm is drawn from
+     * its base, and the items above the image are left out.
+     */
+    @Test
+    public void testTallTowerIsCutAtTheTop() throws IOException
+    {
+        Tower tall = Tower.headless(10, 1000);
+        for (int id = 1; id <= 400; id++) {
+            tall.pushLid(id);
+        }
+        assertEquals(1, TowerLayout.fitScale(10, 1000, 300, 300, 1));
+        TowerLayout layout = new TowerLayout(10, 1000, 1, 0, 300, 300);
+        assertTrue(layout.visibleHeight() < tall.height());
+
+        BufferedImage image = renderer.render(tall);
+        Item bottom = tall.getStack().get(0);
+        java.awt.Rectangle part = layout.itemParts(bottom).get(0);
+        assertEquals(bottom.getColor().getRGB() & 0xFFFFFF, image.getRGB(part.x, part.y) & 0xFFFFFF);
+
+        StringBuilder svg = new StringBuilder();
+        renderer.writeSvg(tall, svg);
+        int rects = svg.toString().split("<rect ", -1).length - 1;
+        int structure = 3 + layout.topCm();   // walls, base and the marks of the image
+        int lids = tall.itemsBetween(0, layout.viewTop()).size();
+        assertTrue(lids < 400);
+        assertEquals(1 + structure + lids, rects);
+    }
+
+    /**
+     * Test exporting many towers in parallel writes a readable file per tower.
+     */
+    @Test
+    public void testExportAll() throws IOException
+    {
+        List<Tower> towers = new ArrayList<Tower>();
+        for (int k = 0; k < 200; k++) {
+            Tower t = Tower.headless(10, 60);
+            for (int id = 1 + k % 5; id <= 6; id++) {
+                t.pushCup(id);
+                t.pushLid(id);
+            }
+            towers.add(t);
+        }
+        File directory = Files.createTempDirectory("towers").toFile();
+        renderer.exportAll(towers, directory, "png");
+        for (int k = 0; k < towers.size(); k += 37) {
+            BufferedImage image = ImageIO.read(new File(directory, "tower-" + k + ".png"));
+            assertNotNull(image);
+            assertEquals(300, image.getHeight());
+        }
+        assertEquals(towers.size(), directory.listFiles().length);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Immutable view of a Tower at one point in time, made by Tower.snapshot().
+ * It answers the queries of the tower but has no mutating methods. To
+ * explore changes from it, fork() a mutable headless tower.
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerSnapshot {
+    private final Tower tower;   // private headless branch, never changed
+
+    /**
+     * Create a snapshot over a branch that nobody else holds.
+     * @param tower the branch of the tower
+     */
+    TowerSnapshot(Tower tower) {
+        this.tower = tower;
+    }
+
+    /**
+     * Create a mutable headless tower from this snapshot.
+     * @return a new tower with the items of the snapshot
+     */
+    public Tower fork() {
+        return tower.fork();
+    }
+
+    /**
+     * Get the height of the tower when the snapshot was taken.
+     * @return the height in cm
+     */
+    public int height() {
+        return tower.height();
+    }
+
+    /**
+     * Get the ids of the lided cups, like Tower.lidedCups.
+     * @return array of ids for all lided cups
+     */
+    public int[] lidedCups() {
+        return tower.lidedCups();
+    }
+
+    /**
+     * Get the items from base to top, like Tower.stackingStack.
+     * @return array of strings alternating type and id from base to top
+     */
+    public String[] stackingStack() {
+        return tower.stackingStack();
+    }
+
+    /**
+     * Get the logical width of the tower.
+     * @return the width, which scales the drawing
+     */
+    public int getWidth() {
+        return tower.getWidth();
+    }
+
+    /**
+     * Get the maximum height of the tower.
+     * @return the max height in cm
+     */
+    public int getMaxHeight() {
+        return tower.getMaxHeight();
+    }
+}
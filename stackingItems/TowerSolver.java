@@ -0,0 +1,141 @@
+import static java.lang.Math.*;
+
+/**
+ * Solver for the ICPC 2025 Problem J "Stacking Cups" question on this tower:
+ * given cups 1..n, where cup i is 2i - 1 cm tall, which order (base to top)
+ * gives a total height of exactly h? Heights follow the same nesting rule
+ * as the Tower: a cup with a smaller id than the cup below goes inside it,
+ * otherwise it sits on top of it.
+ *
+ * <p>Every height from 2n - 1 (all cups nested, largest first) to n^2
+ * (all cups stacked, smallest first) can be reached. The solver stacks a
+ * set of cups in ascending order, puts cup n on them and nests the rest
+ * inside cup n. The height is then (2n - 1) plus the heights of the stacked
+ * cups, so the set is chosen greedily among the odd heights 1, 3, ..., 2n - 3.
+ * Both the solver and the checker run in O(n).</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TowerSolver {
+
+    /**
+     * The solver only has static methods.
+     */
+    private TowerSolver() {
+    }
+
+    /**
+     * Check if some order of cups 1..n has total height h.
+     * @param n the number of cups
+     * @param h the target height in cm
+     * @return true if h can be reached
+     */
+    public static boolean isFeasible(int n, long h) {
+        if (n <= 0) {
+            return false;
+        }
+        return h >= 2L * n - 1 && h <= (long) n * n;
+    }
+
+    /**
+     * Find an order of cups 1..n with total height exactly h.
+     * @param n the number of cups
+     * @param h the target height in cm
+     * @return the cup ids from base to top, or null if h cannot be reached
+     */
+    public static int[] solve(int n, long h) {
+        if (!isFeasible(n, h)) {
+            return null;
+        }
+        int[] order = new int[n];
+        if (n >= 3 && (h == 2L * n + 1 || h == (long) n * n - 2)) {
+            // The two heights the odd sums miss: nesting cup 1 inside cup 2
+            // raises the next cup by exactly 2 cm.
+            order[0] = 2;
+            order[1] = 1;
+            boolean allStacked = (h == (long) n * n - 2) && n != 3;
+            for (int k = 2; k < n; k++) {
+                order[k] = allStacked ? k + 1 : n + 2 - k;  // 3..n or n..3
+            }
+            return order;
+        }
+
+        boolean[] stacked = new boolean[n];
+        int stackedCount = 0;
+        long rest = h - (2L * n - 1);   // Height the stacked cups must add
+        for (int t = n - 1; t >= 1; t--) {
+            long cupHeight = 2L * t - 1;
+            if (isOddSum(rest - cupHeight, t - 1)) {
+                stacked[t - 1] = true;
+                stackedCount++;
+                rest -= cupHeight;
+            }
+        }
+
+        int stackedIdx = 0;
+        int nestedIdx = stackedCount + 1;
+        order[stackedCount] = n;
+        for (int t = 1; t < n; t++) {
+            if (stacked[t - 1]) {
+                order[stackedIdx++] = t;            // ascending below cup n
+            }
+        }
+        for (int t = n - 1; t >= 1; t--) {
+            if (!stacked[t - 1]) {
+                order[nestedIdx++] = t;             // descending inside cup n
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Compute the total height of an order of cups with the nesting rule.
+     * @param order the cup ids from base to top
+     * @return the height in cm
+     */
+    public static long height(int[] order) {
+        long base = 0;
+        long maxTop = 0;
+        for (int k = 0; k < order.length; k++) {
+            if (k > 0) {
+                base += Tower.nestingOffset(order[k - 1], 2 * order[k - 1] - 1, order[k]);
+            }
+            maxTop = max(maxTop, base + 2L * order[k] - 1);
+        }
+        return maxTop;
+    }
+
+    /**
+     * Validate a proposed answer in O(n).
+     * @param n the number of cups
+     * @param h the target height in cm
+     * @param order the proposed cup ids from base to top
+     * @return true if order uses each cup 1..n exactly once and has height h
+     */
+    public static boolean check(int n, long h, int[] order) {
+        if (order == null || order.length != n) {
+            return false;
+        }
+        boolean[] seen = new boolean[n + 1];
+        for (int id : order) {
+            if (id < 1 || id > n || seen[id]) {
+                return false;
+            }
+            seen[id] = true;
+        }
+        return height(order) == h;
+    }
+
+    /**
+     * Check if x is a sum of distinct odd numbers among 1, 3, ..., 2k - 1.
+     * Those sums are every value from 0 to k^2 except 2 and k^2 - 2.
+     * @param x the wanted sum
+     * @param k how many odd numbers can be used
+     * @return true if x can be written that way
+     */
+    private static boolean isOddSum(long x, int k) {
+        long all = (long) k * k;
+        return x >= 0 && x <= all && x != 2 && x != all - 2;
+    }
+}
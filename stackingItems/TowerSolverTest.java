@@ -0,0 +1,135 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the TowerSolver class.
+ * Checks the solver against every permutation of small towers, against
+ * the Tower nesting rule, and on large inputs.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TowerSolverTest
+{
+    /**
+     * Sets up the test fixture.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test the height of some known orders.
+     */
+    @Test
+    public void testHeight()
+    {
+        assertEquals(5, TowerSolver.height(new int[]{3, 2, 1}));  // all nested
+        assertEquals(9, TowerSolver.height(new int[]{1, 2, 3}));  // all stacked
+        assertEquals(7, TowerSolver.height(new int[]{2, 1, 3}));
+    }
+
+    /**
+     * Test every height of every small n is solved exactly when some
+     * permutation reaches it.
+     */
+    @Test
+    public void testMatchesAllPermutations()
+    {
+        for (int n = 1; n <= 7; n++) {
+            boolean[] reachable = new boolean[n * n + 2];
+            int[] order = new int[n];
+            for (int k = 0; k < n; k++) {
+                order[k] = k + 1;
+            }
+            markPermutations(order, 0, reachable);
+            for (int h = 0; h <= n * n + 1; h++) {
+                int[] answer = TowerSolver.solve(n, h);
+                assertEquals(reachable[h], answer != null, "n=" + n + " h=" + h);
+                assertEquals(reachable[h], TowerSolver.isFeasible(n, h));
+                if (answer != null) {
+                    assertTrue(TowerSolver.check(n, h, answer), "n=" + n + " h=" + h);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test the solver uses the same nesting rule as the Tower.
+     */
+    @Test
+    public void testMatchesTower()
+    {
+        int n = 12;
+        for (int h = 2 * n - 1; h <= n * n; h++) {
+            Tower tower = Tower.headless(2 * n, n * n);
+            for (int id : TowerSolver.solve(n, h)) {
+                tower.pushCup(id);
+                assertTrue(tower.ok());
+            }
+            assertEquals(h, tower.height());
+        }
+    }
+
+    /**
+     * Test the checker rejects wrong answers.
+     */
+    @Test
+    public void testCheckRejects()
+    {
+        assertFalse(TowerSolver.check(3, 7, new int[]{2, 1}));       // too short
+        assertFalse(TowerSolver.check(3, 7, new int[]{2, 2, 3}));    // repeated cup
+        assertFalse(TowerSolver.check(3, 7, new int[]{2, 1, 4}));    // unknown cup
+        assertFalse(TowerSolver.check(3, 7, new int[]{1, 2, 3}));    // wrong height
+        assertFalse(TowerSolver.check(3, 7, null));
+    }
+
+    /**
+     * Test n = 2*10^5 is solved and checked for heights across the whole
+     * range. Its speed is measured by the solver benchmark of the JMH module.
+     */
+    @Test
+    public void testLargeInput()
+    {
+        int n = 200000;
+        long[] targets = {2L * n - 1, 2L * n + 1, 1234567891L, (long) n * n - 2, (long) n * n};
+        for (long h : targets) {
+            assertTrue(TowerSolver.check(n, h, TowerSolver.solve(n, h)), "h=" + h);
+        }
+        assertNull(TowerSolver.solve(n, (long) n * n + 1));
+    }
+
+    /**
+     * Mark the height of every permutation of order[from..].
+     * @param order the cups, permuted in place
+     * @param from first position still to permute
+     * @param reachable receives true for each height found
+     */
+    private void markPermutations(int[] order, int from, boolean[] reachable)
+    {
+        if (from == order.length) {
+            reachable[(int) TowerSolver.height(order)] = true;
+            return;
+        }
+        for (int k = from; k < order.length; k++) {
+            int swap = order[from];
+            order[from] = order[k];
+            order[k] = swap;
+            markPermutations(order, from + 1, reachable);
+            order[k] = order[from];
+            order[from] = swap;
+        }
+    }
+}
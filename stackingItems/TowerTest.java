@@ -3,11 +3,14 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Unit tests for the Tower class.
  * Tests all public methods: push, pop, remove, order, reverse,
- * height, lidedCups, stackingItems, and ok.
+ * height, lidedCups, stackingStack, and ok.
  * 
  * @author Tomás
  * @version 1.0
@@ -18,12 +21,13 @@ public class TowerTest
 
     /**
      * Sets up the test fixture.
-     * Creates a tower with width=10 and maxHeight=30 for general testing.
+     * Creates a headless tower with width=10 and maxHeight=30 for general
+     * testing, with the store given by newTower.
      */
     @BeforeEach
     public void setUp()
     {
-        tower = new Tower(10, 30);
+        tower = newTower(10, 30);
     }
 
     /**
@@ -34,6 +38,18 @@ public class TowerTest
     {
     }
 
+    /**
+     * Create a headless tower with the store under test. TreeTowerTest
+     * overrides it to run every test with a TreeItemStore.
+     * @param width the width of the tower
+     * @param maxHeight the maximum height of the tower
+     * @return the new tower
+     */
+    protected Tower newTower(int width, int maxHeight)
+    {
+        return Tower.headless(width, maxHeight, new ArrayItemStore());
+    }
+
     // ---- Constructor ----
 
     /**
@@ -85,14 +101,15 @@ public class TowerTest
     }
 
     /**
-     * Test pushing a cup that exceeds tower width fails.
+     * Test a cup wider than the tower is still pushed. The width only
+     * scales the drawing; the stacking rules never limit the diameter.
      */
     @Test
-    public void testPushCupExceedsWidth()
+    public void testPushCupWiderThanTower()
     {
-        tower.pushCup(11); // diameter 11 > width 10
-        assertFalse(tower.ok());
-        assertEquals(0, tower.height());
+        tower.pushCup(11); // diameter 21 > width 10
+        assertTrue(tower.ok());
+        assertEquals(21, tower.height());
     }
 
     /**
@@ -101,7 +118,7 @@ public class TowerTest
     @Test
     public void testPushCupExceedsHeight()
     {
-        Tower small = new Tower(10, 3);
+        Tower small = newTower(10, 3);
         small.pushCup(3); // height = 5 > maxHeight 3
         assertFalse(small.ok());
         assertEquals(0, small.height());
@@ -151,7 +168,7 @@ public class TowerTest
     @Test
     public void testPushLidExceedsHeight()
     {
-        Tower small = new Tower(10, 1);
+        Tower small = newTower(10, 1);
         small.pushCup(1); // height 1, fills maxHeight
         small.pushLid(1); // would need 1 more cm
         assertFalse(small.ok());
@@ -167,7 +184,7 @@ public class TowerTest
         tower.pushCup(1);
         tower.pushLid(1);
         assertTrue(tower.ok());
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         assertEquals("cup", si[0]);
         assertEquals("1", si[1]);
         assertEquals("lid", si[2]);
@@ -175,15 +192,15 @@ public class TowerTest
     }
 
     /**
-     * Test pushing a lid that exceeds tower width fails.
+     * Test a lid wider than the tower is still pushed, like a cup.
      */
     @Test
-    public void testPushLidExceedsWidth()
+    public void testPushLidWiderThanTower()
     {
-        Tower narrow = new Tower(3, 30);
-        narrow.pushLid(5); // lidWidth = 5 > width 3
-        assertFalse(narrow.ok());
-        assertEquals(0, narrow.height());
+        Tower narrow = newTower(3, 30);
+        narrow.pushLid(5); // diameter 9 > width 3
+        assertTrue(narrow.ok());
+        assertEquals(1, narrow.height());
     }
 
     /**
@@ -336,7 +353,7 @@ public class TowerTest
         tower.pushCup(2);
         tower.orderTower();
         assertTrue(tower.ok());
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         // Expected: cup3 (bottom), cup2, cup1 (top)
         assertEquals("cup", si[0]);
         assertEquals("3", si[1]);
@@ -357,7 +374,7 @@ public class TowerTest
         tower.pushLid(1);
         tower.pushLid(3);
         tower.orderTower();
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         // Expected: cup3, lid3, cup1, lid1
         assertEquals("cup", si[0]);
         assertEquals("3", si[1]);
@@ -370,17 +387,19 @@ public class TowerTest
     }
 
     /**
-     * Test orderTower with height constraint excludes items that don't fit.
+     * Test orderTower on a tower at its maximum height keeps every item:
+     * ordered, the smaller cup nests inside the larger one.
      */
     @Test
     public void testOrderTowerOverflow()
     {
-        Tower small = new Tower(10, 4);
+        Tower small = newTower(10, 4);
         small.pushCup(1); // height 1
-        small.pushCup(2); // height 3, total 4
+        small.pushCup(2); // height 3 over cup 1, total 4
         small.orderTower();
         assertTrue(small.ok());
-        assertEquals(4, small.height());
+        assertArrayEquals(new String[]{"cup", "2", "cup", "1"}, small.stackingStack());
+        assertEquals(3, small.height()); // cup 1 nests at 1..2 inside cup 2
     }
 
     // ---- reverseTower ----
@@ -396,7 +415,7 @@ public class TowerTest
         tower.pushCup(2);
         tower.reverseTower();
         assertTrue(tower.ok());
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         // Expected: cup1 (bottom), cup2, cup3 (top)
         assertEquals("cup", si[0]);
         assertEquals("1", si[1]);
@@ -417,7 +436,7 @@ public class TowerTest
         tower.pushLid(3);
         tower.pushLid(1);
         tower.reverseTower();
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         // Expected: cup1, lid1, cup3, lid3
         assertEquals("cup", si[0]);
         assertEquals("1", si[1]);
@@ -496,27 +515,27 @@ public class TowerTest
         assertEquals(1, lc[1]);
     }
 
-    // ---- stackingItems ----
+    // ---- stackingStack ----
 
     /**
-     * Test stackingItems returns empty array for empty tower.
+     * Test stackingStack returns empty array for empty tower.
      */
     @Test
     public void testStackingItemsEmpty()
     {
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         assertEquals(0, si.length);
     }
 
     /**
-     * Test stackingItems returns correct format.
+     * Test stackingStack returns correct format.
      */
     @Test
     public void testStackingItemsFormat()
     {
         tower.pushCup(4);
         tower.pushLid(4);
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         assertEquals(4, si.length);
         assertEquals("cup", si[0]);
         assertEquals("4", si[1]);
@@ -525,7 +544,7 @@ public class TowerTest
     }
 
     /**
-     * Test stackingItems reflects insertion order (base to top).
+     * Test stackingStack reflects insertion order (base to top).
      */
     @Test
     public void testStackingItemsOrder()
@@ -533,7 +552,7 @@ public class TowerTest
         tower.pushCup(1);
         tower.pushCup(3);
         tower.pushLid(2);
-        String[] si = tower.stackingItems();
+        String[] si = tower.stackingStack();
         assertEquals(6, si.length);
         assertEquals("cup", si[0]);
         assertEquals("1", si[1]);
@@ -578,4 +597,191 @@ public class TowerTest
         tower.pushCup(2); // succeeds
         assertTrue(tower.ok());
     }
+
+    // ---- headless ----
+
+    /**
+     * Test a headless tower works without any GUI and cannot be shown.
+     */
+    @Test
+    public void testHeadlessTower()
+    {
+        Tower headless = newTower(10, 30);
+        assertTrue(headless.isHeadless());
+        headless.pushCup(2);
+        headless.pushLid(2);
+        assertTrue(headless.ok());
+        assertEquals(4, headless.height());
+        headless.pushCup(2); // duplicate, silent error
+        assertFalse(headless.ok());
+        headless.makeVisible();
+        assertFalse(headless.ok());
+        headless.makeInvisible();
+        assertTrue(headless.ok());
+    }
+
+    // ---- applyAll ----
+
+    /**
+     * Test a batch reports the success of each operation.
+     */
+    @Test
+    public void testApplyAllResults()
+    {
+        ArrayList<TowerOp> ops = new ArrayList<TowerOp>();
+        ops.add(TowerOp.pushCup(2));
+        ops.add(TowerOp.pushCup(2));   // duplicate
+        ops.add(TowerOp.pushLid(2));
+        ops.add(TowerOp.removeCup(9)); // not found
+        ops.add(TowerOp.popLid());
+        boolean[] results = tower.applyAll(ops);
+        assertArrayEquals(new boolean[]{true, false, true, false, true}, results);
+        assertFalse(tower.ok());
+        assertEquals(3, tower.height());
+    }
+
+    /**
+     * Test a batch leaves the tower as the same calls one by one would.
+     */
+    @Test
+    public void testApplyAllMatchesSingleCalls()
+    {
+        Tower single = Tower.headless(10, 30);
+        ArrayList<TowerOp> ops = new ArrayList<TowerOp>();
+        for (int id = 5; id >= 1; id--) {
+            ops.add(TowerOp.pushCup(id));
+            ops.add(TowerOp.pushLid(id));
+            single.pushCup(id);
+            single.pushLid(id);
+        }
+        ops.add(TowerOp.removeLid(4));
+        ops.add(TowerOp.removeCup(2));
+        ops.add(TowerOp.reverseTower());
+        single.removeLid(4);
+        single.removeCup(2);
+        single.reverseTower();
+        tower.applyAll(ops);
+        assertArrayEquals(single.stackingStack(), tower.stackingStack());
+        assertEquals(single.height(), tower.height());
+        assertEquals(single.ok(), tower.ok());
+    }
+
+    // ---- scaling ----
+
+    /**
+     * Push n/2 cups, each one followed by its lid, on a tower from newTower.
+     * @param n the number of pushes
+     * @return the elapsed time in nanoseconds
+     */
+    private long timeSequentialPushes(int n)
+    {
+        Tower big = newTower(n, Integer.MAX_VALUE);
+        long start = System.nanoTime();
+        for (int id = n / 2; id >= 1; id--) {
+            big.pushCup(id);
+            big.pushLid(id);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(big.ok());
+        assertEquals(n, big.getStack().size());
+        return elapsed;
+    }
+
+    /**
+     * Test 10^6 sequential pushes cost linear total time: ten times more
+     * pushes must take far less than the hundred times a quadratic
+     * recalculation would need.
+     */
+    @Test
+    public void testSequentialPushesScaleLinearly()
+    {
+        timeSequentialPushes(100000); // warm up
+        long small = timeSequentialPushes(100000);
+        long large = timeSequentialPushes(1000000);
+        assertTrue(large < 30 * small,
+                   "10^6 pushes took " + large / 1000000 + " ms, 10^5 took " + small / 1000000 + " ms");
+    }
+
+    /**
+     * Test orderTower on 10^6 items puts the nested cups first and the lids
+     * without cups on top. The default ArrayItemStore is used, as the tree
+     * store would rebuild a persistent tree of 10^6 leaves; the speed of
+     * both is measured by the orderTower benchmark of the JMH module.
+     */
+    @Test
+    public void testOrderTowerMillionItems()
+    {
+        int n = 1000000;
+        Tower big = Tower.headless(n, Integer.MAX_VALUE, new ArrayItemStore());
+        for (int id = n / 2 + 1; id <= n; id++) {
+            big.pushLid(id); // lids without cups, each 1 cm over the previous
+        }
+        for (int id = n / 2; id >= 1; id--) {
+            big.pushCup(id); // nested cups
+        }
+        big.orderTower();
+        assertTrue(big.ok());
+        List<Item> items = big.getStack();
+        assertEquals(n, items.size());
+        assertTrue(items.get(0) instanceof Cup);
+        assertEquals(n / 2, items.get(0).getId());
+        assertEquals(1, items.get(n / 2 - 1).getId());
+        assertTrue(items.get(n / 2) instanceof Lid);
+        assertEquals(n, items.get(n / 2).getId());
+        assertEquals(n / 2 + 1, items.get(n - 1).getId());
+    }
+
+    // ---- viewport ----
+
+    /**
+     * Items returned by itemsBetween in a band.
+     * @param t the tower
+     * @param bottom lowest height of the band
+     * @param top highest height of the band (exclusive)
+     * @return the ids of the items, with lids as negative ids
+     */
+    private int[] idsBetween(Tower t, int bottom, int top)
+    {
+        ArrayList<Item> items = t.itemsBetween(bottom, top);
+        int[] ids = new int[items.size()];
+        for (int k = 0; k < ids.length; k++) {
+            Item item = items.get(k);
+            ids[k] = (item instanceof Cup) ? item.getId() : -item.getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Test itemsBetween returns exactly the items that cross the band,
+     * with both storage engines.
+     */
+    @Test
+    public void testItemsBetweenMatchesFullScan()
+    {
+        Tower arrayTower = Tower.headless(100, 2000);
+        Tower treeTower = Tower.headless(100, 2000, new TreeItemStore());
+        Random random = new Random(12);
+        for (int step = 0; step < 300; step++) {
+            int id = 1 + random.nextInt(60);
+            if (random.nextBoolean()) {
+                arrayTower.pushCup(id);
+                treeTower.pushCup(id);
+            } else {
+                arrayTower.pushLid(id);
+                treeTower.pushLid(id);
+            }
+        }
+        for (int bottom = 0; bottom <= arrayTower.height(); bottom += 7) {
+            int top = bottom + 25;
+            ArrayList<Integer> expected = new ArrayList<Integer>();
+            for (Item item : arrayTower.getStack()) {
+                if (item.getBasePosition() < top && item.getTopPosition() > bottom) {
+                    expected.add((item instanceof Cup) ? item.getId() : -item.getId());
+                }
+            }
+            int[] expectedIds = expected.stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(expectedIds, idsBetween(arrayTower, bottom, top));
+            assertArrayEquals(expectedIds, idsBetween(treeTower, bottom, top));
+        }
+    }
 }
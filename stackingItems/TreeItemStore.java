@@ -0,0 +1,631 @@
+import java.util.ArrayList;
+import static java.lang.Math.*;
+
+/**
+ * Storage engine of the Tower backed by a segment tree over slots.
+ * Every pushed item takes the next free slot, and removing an item only
+ * empties its slot, so nothing is shifted. Each node keeps, as subtree
+ * aggregates, the data the nesting rule needs: the first and last item,
+ * the base of the last item and the highest top, both relative to the
+ * base of the first item. Removal anywhere in the tower, the resulting
+ * height(), get(index) and the searches by height all cost O(log n).
+ *
+ * <p>Nodes are never modified after they are built: an update copies the
+ * path from the root to the slot. The leaves are indexed by id in
+ * PersistentIdIndex tries, which are immutable too, so fork() only copies
+ * a few references and the two stores share every node.</p>
+ *
+ * <p>Items are shared with the nodes, and a store writes the position of
+ * an item when it hands it out. So every leaf records the store that made
+ * it, and a store only hands out its own items: the first time a fork
+ * hands out a shared item (get, findCup, findLid or asList) it copies the
+ * item and the path to its leaf. A fork never writes into the items of
+ * the store it came from, and reading its ids, heights and positions
+ * through forEach writes nothing at all.</p>
+ *
+ * @author Acero - Quiceno
+ * @version 3.0
+ */
+public class TreeItemStore implements ItemStore {
+    private Node root;               // null when the stack is empty
+    private int capacity;            // number of slots covered by root (a power of two)
+    private int nextSlot;            // first slot that was never used
+    private PersistentIdIndex<Node> cupLeaves; // Leaves of the cups by id
+    private PersistentIdIndex<Node> lidLeaves; // Leaves of the lids by id
+    private LidedCups lided;         // Cups with their lid right above
+    private boolean lidedShared;     // lided is shared with a fork: copy it before a change
+    private final Object owner = new Object();   // marks the leaves whose items this store made
+
+    /**
+     * Create an empty store.
+     */
+    public TreeItemStore() {
+        load(new ArrayList<Item>());
+    }
+
+    /**
+     * Create a store that shares the tree and the id indexes of another one.
+     * @param other the store to fork
+     */
+    private TreeItemStore(TreeItemStore other) {
+        this.root = other.root;
+        this.capacity = other.capacity;
+        this.nextSlot = other.nextSlot;
+        this.cupLeaves = other.cupLeaves;
+        this.lidLeaves = other.lidLeaves;
+        this.lided = other.lided;
+        this.lidedShared = true;
+        other.lidedShared = true;
+    }
+
+    @Override
+    public int size() {
+        return (root == null) ? 0 : root.count;
+    }
+
+    /**
+     * Descend to the item at the given index, joining everything on its
+     * left to find its base position.
+     * @param index the stack index (0 is the base)
+     * @return the item at that index
+     */
+    @Override
+    public Item get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        int remaining = index;
+        Item below = null;      // last item on the left of the path
+        int belowBase = 0;      // its base position
+        while (node.item == null) {
+            int leftCount = (node.left == null) ? 0 : node.left.count;
+            if (remaining < leftCount) {
+                node = node.left;
+            } else {
+                if (node.left != null) {
+                    belowBase = joinedBase(below, belowBase, node.left);
+                    below = node.left.last;
+                }
+                remaining -= leftCount;
+                node = node.right;
+            }
+        }
+        Item item = own(node).item;
+        item.setBasePosition(below == null ? 0
+                             : belowBase + Tower.nestingOffset(below, item.getId()));
+        item.setStackIndex(index);
+        return item;
+    }
+
+    /**
+     * Put the item in the next slot, doubling the slots if they run out.
+     * @param item the item to add
+     */
+    @Override
+    public void add(Item item) {
+        if (nextSlot == capacity) {
+            root = (root == null) ? null : new Node(root, null);
+            capacity *= 2;
+        }
+        ownLided().link((root == null) ? null : root.last, item);
+        Node leaf = new Node(item, nextSlot, owner);
+        root = set(root, 0, capacity, nextSlot, leaf);
+        nextSlot++;
+        index(leaf);
+    }
+
+    /**
+     * Put the item in an empty slot between its neighbors, which exists
+     * when it was removed from there. Otherwise the tree is rebuilt.
+     * @param index the stack index the item gets
+     * @param item the item to insert
+     */
+    @Override
+    public void insert(int index, Item item) {
+        if (index == size()) {
+            add(item);
+            return;
+        }
+        Node aboveLeaf = leafAt(index);
+        Node belowLeaf = (index == 0) ? null : leafAt(index - 1);
+        int above = aboveLeaf.slot;
+        int below = (belowLeaf == null) ? -1 : belowLeaf.slot;
+        if (above - below > 1) {
+            Item belowItem = (belowLeaf == null) ? null : belowLeaf.item;
+            LidedCups pairs = ownLided();
+            pairs.unlink(belowItem, aboveLeaf.item);
+            pairs.link(belowItem, item);
+            pairs.link(item, aboveLeaf.item);
+            Node leaf = new Node(item, above - 1, owner);   // every slot between them is empty
+            root = set(root, 0, capacity, leaf.slot, leaf);
+            index(leaf);
+            return;
+        }
+        ArrayList<Item> items = asList();
+        items.add(index, item);
+        load(items);
+    }
+
+    /**
+     * Empty the slot of the item. When most slots are empty the tree is
+     * rebuilt, so the cost stays O(log n) amortized.
+     * @param item the item to remove
+     */
+    @Override
+    public void remove(Item item) {
+        int idx = indexOf(item);
+        Item below = (idx == 0) ? null : leafAt(idx - 1).item;
+        Item above = (idx == size() - 1) ? null : leafAt(idx + 1).item;
+        LidedCups pairs = ownLided();
+        pairs.unlink(below, item);
+        pairs.unlink(item, above);
+        pairs.link(below, above);
+        Node leaf;
+        if (item instanceof Cup) {
+            leaf = cupLeaves.get(item.getId());
+            cupLeaves = cupLeaves.remove(item.getId());
+        } else {
+            leaf = lidLeaves.get(item.getId());
+            lidLeaves = lidLeaves.remove(item.getId());
+        }
+        root = set(root, 0, capacity, leaf.slot, null);
+        if (nextSlot > 64 && size() < nextSlot / 4) {
+            load(asList());
+        }
+    }
+
+    /**
+     * Count the items in the slots before the leaf of the item.
+     * @param item the item to search for
+     * @return its stack index
+     */
+    @Override
+    public int indexOf(Item item) {
+        Node leaf = ((item instanceof Cup) ? cupLeaves : lidLeaves).get(item.getId());
+        Node node = root;
+        int lo = 0;
+        int hi = capacity;
+        int index = 0;
+        while (node.item == null) {
+            int mid = (lo + hi) >>> 1;
+            if (leaf.slot < mid) {
+                node = node.left;
+                hi = mid;
+            } else {
+                index += (node.left == null) ? 0 : node.left.count;
+                node = node.right;
+                lo = mid;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public Cup findCup(int id) {
+        Node leaf = cupLeaves.get(id);
+        return (leaf == null) ? null : (Cup) own(leaf).item;
+    }
+
+    @Override
+    public Lid findLid(int id) {
+        Node leaf = lidLeaves.get(id);
+        return (leaf == null) ? null : (Lid) own(leaf).item;
+    }
+
+    @Override
+    public int height() {
+        return (root == null) ? 0 : root.maxTop;
+    }
+
+    /**
+     * Descend towards the first subtree whose highest top is above height.
+     * @param height a height in cm
+     * @return the stack index of the first item above height, or size()
+     */
+    @Override
+    public int firstReaching(int height) {
+        if (root == null || root.maxTop <= height) {
+            return size();
+        }
+        Node node = root;
+        int base = 0;    // absolute base of node.first
+        int index = 0;   // stack index of node.first
+        while (node.item == null) {
+            if (node.left != null && base + node.left.maxTop > height) {
+                node = node.left;
+            } else {
+                if (node.left != null) {
+                    base += node.left.lastBase
+                            + Tower.nestingOffset(node.left.last, node.right.first.getId());
+                    index += node.left.count;
+                }
+                node = node.right;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Descend towards the first item whose base is at height or above.
+     * @param height a height in cm
+     * @return the stack index of the first item starting at height or above, or size()
+     */
+    @Override
+    public int firstStartingAt(int height) {
+        if (root == null || root.lastBase < height) {
+            return size();
+        }
+        Node node = root;
+        int base = 0;    // absolute base of node.first
+        int index = 0;   // stack index of node.first
+        while (node.item == null) {
+            if (node.left == null) {
+                node = node.right;
+            } else if (node.right == null || base + node.left.lastBase >= height) {
+                node = node.left;
+            } else {
+                base += node.left.lastBase
+                        + Tower.nestingOffset(node.left.last, node.right.first.getId());
+                index += node.left.count;
+                node = node.right;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Build a balanced tree with the items in the first slots, in O(n),
+     * and the id indexes with one bulk build each.
+     * @param items the new items from base to top
+     */
+    @Override
+    public void load(ArrayList<Item> items) {
+        capacity = 1;
+        while (capacity < items.size()) {
+            capacity *= 2;
+        }
+        nextSlot = items.size();
+        Node[] leaves = new Node[items.size()];
+        root = build(items, 0, capacity, leaves);
+        cupLeaves = leavesById(leaves, true);
+        lidLeaves = leavesById(leaves, false);
+        lided = new LidedCups();
+        lidedShared = false;
+        lided.rebuild(items);
+    }
+
+    /**
+     * Order the lided cups by their slots, which grow from base to top.
+     * @return the ids from base to top
+     */
+    @Override
+    public int[] lidedCups() {
+        return lided.inStackOrder(id -> cupLeaves.get(id).slot);
+    }
+
+    /**
+     * Share the whole tree with a new store in O(1). Later updates of
+     * either store copy their own paths, so they never see each other.
+     * @return the new store
+     */
+    @Override
+    public ItemStore fork() {
+        return new TreeItemStore(this);
+    }
+
+    /**
+     * Walk the slots in order, giving each item its base position. Items
+     * still shared with another store are copied first, and then the tree
+     * is rebuilt over the copies.
+     * @return a new list of items from base to top
+     */
+    @Override
+    public ArrayList<Item> asList() {
+        long start = TowerMetrics.start();
+        TowerEvents.PositionRecompute event = new TowerEvents.PositionRecompute();
+        event.begin();
+        ArrayList<Item> items = new ArrayList<Item>(size());
+        if (collect(root, items)) {
+            load(items);
+        }
+        Item below = null;
+        for (int idx = 0; idx < items.size(); idx++) {
+            Item item = items.get(idx);
+            item.setBasePosition(Tower.basePositionOver(below, item.getId()));
+            item.setStackIndex(idx);
+            below = item;
+        }
+        TowerMetrics.stop(TowerMetrics.Operation.RECALCULATE_POSITIONS, start);
+        if (event.shouldCommit()) {
+            event.itemsRecomputed = items.size();
+            event.stackSize = items.size();
+            event.height = height();
+            event.commit();
+        }
+        return items;
+    }
+
+    /**
+     * Walk the slots in order, joining each item to the one below it.
+     * The positions are computed on the way, not stored in the items, and
+     * nothing is allocated.
+     * @param visitor receives the kind, id, base and top of each item
+     */
+    @Override
+    public void forEach(ItemVisitor visitor) {
+        if (root != null) {
+            visit(root, null, 0, visitor);
+        }
+    }
+
+    // ---- Private helper methods ----
+
+    /**
+     * Hand the items of a subtree to a visitor, in slot order.
+     * @param node the subtree, not null
+     * @param below the item right under the subtree, or null
+     * @param belowBase the base position of below
+     * @param visitor receives the kind, id, base and top of each item
+     * @return the base position of node.last
+     */
+    private static int visit(Node node, Item below, int belowBase, ItemVisitor visitor) {
+        if (node.item != null) {
+            Item item = node.item;
+            int base = (below == null) ? 0 : belowBase + Tower.nestingOffset(below, item.getId());
+            visitor.visit((item instanceof Cup) ? ItemVisitor.CUP : ItemVisitor.LID,
+                          item.getId(), base, base + item.getHeight());
+            return base;
+        }
+        if (node.left != null) {
+            belowBase = visit(node.left, below, belowBase, visitor);
+            below = node.left.last;
+        }
+        return (node.right == null) ? belowBase : visit(node.right, below, belowBase, visitor);
+    }
+
+    /**
+     * Add a leaf to the id index of the kind of its item.
+     * @param leaf the leaf of a cup or a lid
+     */
+    private void index(Node leaf) {
+        if (leaf.item instanceof Cup) {
+            cupLeaves = cupLeaves.put(leaf.item.getId(), leaf);
+        } else {
+            lidLeaves = lidLeaves.put(leaf.item.getId(), leaf);
+        }
+    }
+
+    /**
+     * Get the set of lided cups to change it, copying it first if a fork
+     * still shares it.
+     * @return the set of this store only
+     */
+    private LidedCups ownLided() {
+        if (lidedShared) {
+            lided = lided.copy();
+            lidedShared = false;
+        }
+        return lided;
+    }
+
+    /**
+     * Descend to the leaf of the item at a stack index.
+     * @param index the stack index (0 is the base)
+     * @return the leaf
+     */
+    private Node leafAt(int index) {
+        Node node = root;
+        int remaining = index;
+        while (node.item == null) {
+            int leftCount = (node.left == null) ? 0 : node.left.count;
+            if (remaining < leftCount) {
+                node = node.left;
+            } else {
+                remaining -= leftCount;
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Copy the path to a slot, replacing its leaf.
+     * @param node the subtree covering [lo, hi), may be null
+     * @param lo first slot of the subtree
+     * @param hi end slot of the subtree (exclusive)
+     * @param slot the slot to replace
+     * @param leaf the new leaf, or null to empty the slot
+     * @return the new subtree, or null if it became empty
+     */
+    private Node set(Node node, int lo, int hi, int slot, Node leaf) {
+        if (hi - lo == 1) {
+            return leaf;
+        }
+        int mid = (lo + hi) >>> 1;
+        Node left = (node == null) ? null : node.left;
+        Node right = (node == null) ? null : node.right;
+        if (slot < mid) {
+            left = set(left, lo, mid, slot, leaf);
+        } else {
+            right = set(right, mid, hi, slot, leaf);
+        }
+        if (left == null && right == null) {
+            return null;
+        }
+        return new Node(left, right);
+    }
+
+    /**
+     * Build the subtree for the slots [lo, hi) from the list.
+     * @param items the items, item k goes to slot k
+     * @param lo first slot of the subtree
+     * @param hi end slot of the subtree (exclusive)
+     * @param leaves receives the leaf of slot k at index k
+     * @return the subtree, or null if it has no items
+     */
+    private Node build(ArrayList<Item> items, int lo, int hi, Node[] leaves) {
+        if (lo >= items.size()) {
+            return null;
+        }
+        if (hi - lo == 1) {
+            leaves[lo] = new Node(items.get(lo), lo, owner);
+            return leaves[lo];
+        }
+        int mid = (lo + hi) >>> 1;
+        Node left = build(items, lo, mid, leaves);
+        Node right = build(items, mid, hi, leaves);
+        return (right == null) ? new Node(left, null) : new Node(left, right);
+    }
+
+    /**
+     * Index the leaves of one kind by id in a single bulk build.
+     * @param leaves the leaves of every slot
+     * @param cups true for the cups, false for the lids
+     * @return the index of those leaves
+     */
+    private static PersistentIdIndex<Node> leavesById(Node[] leaves, boolean cups) {
+        int count = 0;
+        for (Node leaf : leaves) {
+            if ((leaf.item instanceof Cup) == cups) {
+                count++;
+            }
+        }
+        int[] ids = new int[count];
+        Node[] found = new Node[count];
+        count = 0;
+        for (Node leaf : leaves) {
+            if ((leaf.item instanceof Cup) == cups) {
+                ids[count] = leaf.item.getId();
+                found[count++] = leaf;
+            }
+        }
+        return PersistentIdIndex.of(ids, found, count);
+    }
+
+    /**
+     * Add the items of a subtree to a list, in slot order. An item of
+     * another store is added as a copy.
+     * @param node the subtree, may be null
+     * @param items the list that receives the items
+     * @return true if some item was copied
+     */
+    private boolean collect(Node node, ArrayList<Item> items) {
+        if (node == null) {
+            return false;
+        }
+        if (node.item != null) {
+            items.add((node.owner == owner) ? node.item : copy(node.item));
+            return node.owner != owner;
+        }
+        boolean copied = collect(node.left, items);
+        return collect(node.right, items) || copied;
+    }
+
+    /**
+     * Get a leaf whose item belongs to this store. A leaf of another store
+     * is replaced by a leaf with a copy of its item, copying its path.
+     * @param leaf a leaf of this tree
+     * @return the leaf, or its replacement
+     */
+    private Node own(Node leaf) {
+        if (leaf.owner == owner) {
+            return leaf;
+        }
+        Node mine = new Node(copy(leaf.item), leaf.slot, owner);
+        root = set(root, 0, capacity, leaf.slot, mine);
+        index(mine);
+        return mine;
+    }
+
+    /**
+     * Create an item with the kind, id and color of another one.
+     * @param item the item to copy
+     * @return the new item, without a position
+     */
+    private static Item copy(Item item) {
+        if (item instanceof Cup) {
+            return new Cup(item.getId(), item.getColor());
+        }
+        return new Lid(item.getId(), item.getColor());
+    }
+
+    /**
+     * Base position of the last item of a subtree placed after a prefix.
+     * @param below last item of the prefix, or null if the prefix is empty
+     * @param belowBase base position of that item
+     * @param node the subtree that follows the prefix
+     * @return the base position of node.last
+     */
+    private static int joinedBase(Item below, int belowBase, Node node) {
+        if (below == null) {
+            return node.lastBase;
+        }
+        return belowBase + Tower.nestingOffset(below, node.first.getId()) + node.lastBase;
+    }
+
+    /**
+     * Node of the segment tree. Leaves hold one item, inner nodes hold the
+     * aggregates of their children. Positions are relative to the base of
+     * the first item of the subtree.
+     */
+    private static class Node {
+        private final Node left;
+        private final Node right;
+        private final Item item;     // only for leaves
+        private final int slot;      // only for leaves
+        private final Object owner;  // only for leaves: the store that made the item
+        private final int count;
+        private final Item first;
+        private final Item last;
+        private final int lastBase;  // base of last, relative to the base of first
+        private final int maxTop;    // highest top, relative to the base of first
+
+        /**
+         * Create a leaf.
+         * @param item the item of the slot
+         * @param slot the slot number
+         * @param owner the store that made the item
+         */
+        Node(Item item, int slot, Object owner) {
+            this.left = null;
+            this.right = null;
+            this.item = item;
+            this.slot = slot;
+            this.owner = owner;
+            this.count = 1;
+            this.first = item;
+            this.last = item;
+            this.lastBase = 0;
+            this.maxTop = item.getHeight();
+        }
+
+        /**
+         * Create an inner node joining two subtrees (at least one not null).
+         * @param left the lower slots
+         * @param right the higher slots
+         */
+        Node(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+            this.item = null;
+            this.slot = -1;
+            this.owner = null;
+            if (left == null || right == null) {
+                Node only = (left == null) ? right : left;
+                this.count = only.count;
+                this.first = only.first;
+                this.last = only.last;
+                this.lastBase = only.lastBase;
+                this.maxTop = only.maxTop;
+            } else {
+                int offset = left.lastBase + Tower.nestingOffset(left.last, right.first.getId());
+                this.count = left.count + right.count;
+                this.first = left.first;
+                this.last = right.last;
+                this.lastBase = offset + right.lastBase;
+                this.maxTop = max(left.maxTop, offset + right.maxTop);
+            }
+        }
+    }
+}
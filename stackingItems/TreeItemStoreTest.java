@@ -0,0 +1,206 @@
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the TreeItemStore class.
+ * Compares a tower backed by the segment tree with one backed by the
+ * default ArrayItemStore.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TreeItemStoreTest
+{
+    private Tower treeTower;
+    private Tower arrayTower;
+
+    /**
+     * Sets up the test fixture.
+     * Creates two headless towers with width=10 and maxHeight=30.
+     */
+    @BeforeEach
+    public void setUp()
+    {
+        treeTower = Tower.headless(10, 30, new TreeItemStore());
+        arrayTower = Tower.headless(10, 30);
+    }
+
+    /**
+     * Tears down the test fixture.
+     */
+    @AfterEach
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test removing from the middle repositions the items above.
+     */
+    @Test
+    public void testRemoveFromMiddle()
+    {
+        treeTower.pushCup(3); // base 0, top 5
+        treeTower.pushCup(1); // nested, base 1, top 2
+        treeTower.pushCup(2); // base 2, top 5
+        treeTower.removeCup(1);
+        assertTrue(treeTower.ok());
+        assertEquals(5, treeTower.height()); // cup 2 now nested in cup 3: base 1, top 4
+        List<Item> items = treeTower.getStack();
+        assertEquals(0, items.get(0).getBasePosition());
+        assertEquals(1, items.get(1).getBasePosition());
+    }
+
+    /**
+     * Test get returns each item with its base position.
+     */
+    @Test
+    public void testGetGivesBasePositions()
+    {
+        TreeItemStore store = new TreeItemStore();
+        store.add(new Cup(2, null));
+        store.add(new Cup(1, null));
+        store.add(new Lid(4, null));
+        assertEquals(0, store.get(0).getBasePosition());
+        assertEquals(1, store.get(1).getBasePosition());
+        assertEquals(2, store.get(2).getBasePosition());
+        assertEquals(3, store.height());
+    }
+
+    /**
+     * Test a long random sequence of operations gives the same tower
+     * with both storage engines.
+     */
+    @Test
+    public void testMatchesArrayStore()
+    {
+        treeTower = Tower.headless(100, 400, new TreeItemStore());
+        arrayTower = Tower.headless(100, 400);
+        Random random = new Random(7);
+        for (int step = 0; step < 20000; step++) {
+            int id = 1 + random.nextInt(40);
+            switch (random.nextInt(8)) {
+                case 0: case 1:
+                    treeTower.pushCup(id);
+                    arrayTower.pushCup(id);
+                    break;
+                case 2: case 3:
+                    treeTower.pushLid(id);
+                    arrayTower.pushLid(id);
+                    break;
+                case 4:
+                    treeTower.removeCup(id);
+                    arrayTower.removeCup(id);
+                    break;
+                case 5:
+                    treeTower.removeLid(id);
+                    arrayTower.removeLid(id);
+                    break;
+                case 6:
+                    treeTower.popCup();
+                    arrayTower.popCup();
+                    break;
+                default:
+                    treeTower.orderTower();
+                    arrayTower.orderTower();
+            }
+            assertEquals(arrayTower.ok(), treeTower.ok());
+            assertEquals(arrayTower.height(), treeTower.height());
+        }
+        assertArrayEquals(arrayTower.stackingStack(), treeTower.stackingStack());
+        assertArrayEquals(arrayTower.lidedCups(), treeTower.lidedCups());
+    }
+
+    /**
+     * Test a fork and the tower change without seeing each other.
+     */
+    @Test
+    public void testForkIsIndependent()
+    {
+        treeTower.pushCup(4);
+        treeTower.pushCup(2);
+        Tower branch = treeTower.fork();
+        assertTrue(branch.isHeadless());
+        branch.removeCup(4);
+        branch.pushLid(2);
+        treeTower.pushCup(1);
+
+        assertArrayEquals(new String[]{"cup", "4", "cup", "2", "cup", "1"},
+                          treeTower.stackingStack());
+        assertArrayEquals(new String[]{"cup", "2", "lid", "2"}, branch.stackingStack());
+        assertEquals(4, branch.height());
+        assertArrayEquals(new int[]{2}, branch.lidedCups());
+        assertEquals(7, treeTower.height());
+    }
+
+    /**
+     * Test a snapshot keeps the state it was taken in, with both stores.
+     */
+    @Test
+    public void testSnapshotDoesNotChange()
+    {
+        for (Tower tower : new Tower[]{treeTower, arrayTower}) {
+            tower.pushCup(3);
+            tower.pushLid(3);
+            TowerSnapshot snapshot = tower.snapshot();
+            tower.removeCup(3);
+            tower.orderTower();
+
+            assertArrayEquals(new String[]{"cup", "3", "lid", "3"}, snapshot.stackingStack());
+            assertEquals(6, snapshot.height());
+            Tower branch = snapshot.fork();
+            branch.popLid();
+            assertEquals(5, branch.height());
+            assertEquals(6, snapshot.height());
+        }
+    }
+
+    /**
+     * Test many forks of one tower each get their own change.
+     */
+    @Test
+    public void testManyForks()
+    {
+        treeTower = Tower.headless(100, 10000, new TreeItemStore());
+        for (int id = 1; id <= 50; id++) {
+            treeTower.pushCup(id);
+        }
+        for (int id = 1; id <= 50; id++) {
+            Tower branch = treeTower.fork();
+            branch.removeCup(id);
+            assertEquals(2500 - (2 * id - 1), branch.height());
+        }
+        assertEquals(2500, treeTower.height());
+    }
+
+    /**
+     * Test reading a fork never rewrites the positions of the items the
+     * tower handed out, and the fork hands out items of its own.
+     */
+    @Test
+    public void testForkDoesNotRewriteSharedItems()
+    {
+        treeTower.pushCup(3);
+        treeTower.pushCup(2);
+        treeTower.pushCup(1);
+        Tower branch = treeTower.fork();
+        List<Item> mine = treeTower.getStack();
+        assertEquals(2, mine.get(2).getBasePosition());
+
+        branch.removeCup(2);
+        List<Item> theirs = branch.getStack();
+        assertEquals(1, theirs.get(1).getBasePosition());
+        assertEquals(2, mine.get(2).getBasePosition());
+        assertNotSame(mine.get(0), theirs.get(0));
+        assertSame(mine.get(0), treeTower.getStack().get(0));
+
+        Tower other = treeTower.fork();
+        Item cup = other.getStack().get(2);
+        assertEquals(2, cup.getBasePosition());
+        assertNotSame(mine.get(2), cup);
+    }
+}
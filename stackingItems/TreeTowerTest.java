@@ -0,0 +1,21 @@
+/**
+ * Runs every test of TowerTest on a tower backed by a TreeItemStore,
+ * so both storage engines pass the same public contract.
+ *
+ * @author Tomás
+ * @version 1.0
+ */
+public class TreeTowerTest extends TowerTest
+{
+    /**
+     * Create a headless tower with a TreeItemStore.
+     * @param width the width of the tower
+     * @param maxHeight the maximum height of the tower
+     * @return the new tower
+     */
+    @Override
+    protected Tower newTower(int width, int maxHeight)
+    {
+        return Tower.headless(width, maxHeight, new TreeItemStore());
+    }
+}